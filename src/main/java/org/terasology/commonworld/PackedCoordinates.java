@@ -0,0 +1,40 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.commonworld;
+
+/**
+ * Packs a pair of int coordinates into a single long (x in the upper, z in the lower 32 bits).
+ * Useful as allocation-free map key or return value.
+ */
+public final class PackedCoordinates {
+
+    private PackedCoordinates() {
+        // private
+    }
+
+    /**
+     * @param x the x coordinate
+     * @param z the z coordinate
+     * @return the packed coordinate pair
+     */
+    public static long pack(int x, int z) {
+        return ((long) x << 32) | (z & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @param packed the packed coordinate pair
+     * @return the x coordinate
+     */
+    public static int unpackX(long packed) {
+        return (int) (packed >> 32);
+    }
+
+    /**
+     * @param packed the packed coordinate pair
+     * @return the z coordinate
+     */
+    public static int unpackZ(long packed) {
+        return (int) packed;
+    }
+}
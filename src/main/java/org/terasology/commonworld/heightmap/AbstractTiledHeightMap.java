@@ -0,0 +1,129 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.commonworld.heightmap;
+
+import com.google.common.base.Preconditions;
+import org.terasology.commonworld.PackedCoordinates;
+import org.terasology.joml.geom.Rectanglei;
+
+/**
+ * Base class for height maps that serve their values from square tiles of a fixed size.
+ * Tiles that intersect a changed area are discarded and recomputed on their next access.
+ */
+abstract class AbstractTiledHeightMap implements MeasuredHeightMap, HeightMapListener {
+
+    protected final int tileSize;
+
+    /**
+     * The counters of hit and missed values - only present if the height map is instrumented
+     */
+    private volatile HeightMapStats stats;
+
+    /**
+     * @param tileSize the edge length of a tile
+     */
+    protected AbstractTiledHeightMap(int tileSize) {
+        Preconditions.checkArgument(tileSize > 0, "tileSize must be positive (is %s)", tileSize);
+        this.tileSize = tileSize;
+    }
+
+    /**
+     * @param tx the tile x coord
+     * @param tz the tile z coord
+     * @param values the number of values the caller reads from the tile (counted as hits or misses)
+     * @return the heights of the tile in row-major order
+     */
+    protected abstract int[] getTile(int tx, int tz, int values);
+
+    /**
+     * Counts the values that are read from a tile
+     * @param hit true if the tile was cached, false if it had to be computed
+     * @param values the number of values
+     */
+    protected void recordAccess(boolean hit, int values) {
+        HeightMapStats counters = stats;
+        if (counters != null) {
+            if (hit) {
+                counters.recordHits(values);
+            } else {
+                counters.recordMisses(values);
+            }
+        }
+    }
+
+    /**
+     * Discards all tiles in the given range of tile coordinates
+     * @param tx0 the min. tile x coord (inclusive)
+     * @param tz0 the min. tile z coord (inclusive)
+     * @param tx1 the max. tile x coord (inclusive)
+     * @param tz1 the max. tile z coord (inclusive)
+     */
+    protected abstract void invalidateTiles(int tx0, int tz0, int tx1, int tz1);
+
+    /**
+     * @param tx the tile x coord
+     * @param tz the tile z coord
+     * @return the world area that is covered by the tile
+     */
+    protected Rectanglei getTileArea(int tx, int tz) {
+        return new Rectanglei(tx * tileSize, tz * tileSize, (tx + 1) * tileSize, (tz + 1) * tileSize);
+    }
+
+    @Override
+    public void onHeightChanged(Rectanglei area) {
+        int tx0 = Math.floorDiv(area.minX(), tileSize);
+        int tz0 = Math.floorDiv(area.minY(), tileSize);
+        int tx1 = Math.floorDiv(area.minX() + area.getSizeX() - 1, tileSize);
+        int tz1 = Math.floorDiv(area.minY() + area.getSizeY() - 1, tileSize);
+        invalidateTiles(tx0, tz0, tx1, tz1);
+    }
+
+    /**
+     * @param key the packed tile coordinates
+     * @return true if the tile is in the given range of tile coordinates (inclusive)
+     */
+    protected static boolean isInRange(long key, int tx0, int tz0, int tx1, int tz1) {
+        int tx = PackedCoordinates.unpackX(key);
+        int tz = PackedCoordinates.unpackZ(key);
+        return tx >= tx0 && tx <= tx1 && tz >= tz0 && tz <= tz1;
+    }
+
+    @Override
+    public void setStats(HeightMapStats stats) {
+        this.stats = stats;
+    }
+
+    @Override
+    public int apply(int x, int z) {
+        int tx = Math.floorDiv(x, tileSize);
+        int tz = Math.floorDiv(z, tileSize);
+        int[] tile = getTile(tx, tz, 1);
+        return tile[(z - tz * tileSize) * tileSize + (x - tx * tileSize)];
+    }
+
+    @Override
+    public void fill(Rectanglei area, int[] dest, int offset, int stride) {
+        int maxX = area.minX() + area.getSizeX();
+        int maxZ = area.minY() + area.getSizeY();
+        int tx0 = Math.floorDiv(area.minX(), tileSize);
+        int tz0 = Math.floorDiv(area.minY(), tileSize);
+        int tx1 = Math.floorDiv(maxX - 1, tileSize);
+        int tz1 = Math.floorDiv(maxZ - 1, tileSize);
+
+        for (int tz = tz0; tz <= tz1; tz++) {
+            int z0 = Math.max(area.minY(), tz * tileSize);
+            int z1 = Math.min(maxZ, (tz + 1) * tileSize);
+            for (int tx = tx0; tx <= tx1; tx++) {
+                int x0 = Math.max(area.minX(), tx * tileSize);
+                int x1 = Math.min(maxX, (tx + 1) * tileSize);
+                int[] tile = getTile(tx, tz, (x1 - x0) * (z1 - z0));
+                for (int z = z0; z < z1; z++) {
+                    int src = (z - tz * tileSize) * tileSize + (x0 - tx * tileSize);
+                    int dst = offset + (z - area.minY()) * stride + (x0 - area.minX());
+                    System.arraycopy(tile, src, dest, dst, x1 - x0);
+                }
+            }
+        }
+    }
+}
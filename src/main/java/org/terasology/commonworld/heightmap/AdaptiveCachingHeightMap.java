@@ -0,0 +1,296 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.commonworld.heightmap;
+
+import com.google.common.base.Preconditions;
+import com.google.common.math.IntMath;
+import org.terasology.commonworld.PackedCoordinates;
+import org.terasology.joml.geom.Rectanglei;
+
+import java.util.Arrays;
+
+/**
+ * A cache that stores a rectangular area in a quadtree of lattice cells and interpolates
+ * values bi-linearly within a cell. Starting from a coarse lattice, a cell is split into four
+ * whenever the interpolation deviates from the underlying height map by more than a given
+ * tolerance at one of the probe points of the cell. The probes are the lattice points of the next
+ * finer level, i.e. exactly the corners the children would need, so a failed probe wastes no
+ * evaluation. Flat regions are therefore represented by few large cells that are evaluated
+ * at a few points only.
+ * Where refining a cell would need more memory than its plain heights, the heights are stored
+ * instead, so rugged regions cost about as much as in a non-interpolating cache.
+ */
+class AdaptiveCachingHeightMap implements MeasuredHeightMap {
+
+    private static final int LEAF = -1;
+
+    /**
+     * Child entries below this value refer to plain tiles: the tile starts at index TILE - entry
+     */
+    private static final int TILE = -2;
+
+    /**
+     * Every quadtree node consists of a child entry and four corner heights
+     */
+    private static final int INTS_PER_NODE = 5;
+
+    private final Rectanglei area;
+    private final HeightMap hm;
+    private final int tolerance;
+    private final int rootShift;
+    private final int rootsX;
+
+    private volatile HeightMapStats stats;
+
+    // quadtree nodes: index of the first of four children, LEAF or a tile, and the four corner heights
+    private int[] children;
+    private int[] corners;
+    private int nodeCount;
+
+    // the heights of all plain tiles
+    private int[] tiles;
+    private int tileDataSize;
+
+    // points that have been evaluated during construction
+    private LongIntMap samples;
+    private int sampleCount;
+
+    /**
+     * @param area the area to cache
+     * @param hm the height map to use
+     * @param maxCellSize the edge length of the coarsest lattice cell (must be a power of two)
+     * @param tolerance the maximum deviation in blocks at the probe points
+     */
+    AdaptiveCachingHeightMap(Rectanglei area, HeightMap hm, int maxCellSize, int tolerance) {
+        Preconditions.checkArgument(IntMath.isPowerOfTwo(maxCellSize), "maxCellSize must be a power of two (is %s)", maxCellSize);
+        Preconditions.checkArgument(tolerance >= 0, "tolerance must not be negative (is %s)", tolerance);
+
+        this.area = area;
+        this.hm = hm;
+        this.tolerance = tolerance;
+        this.rootShift = Integer.numberOfTrailingZeros(maxCellSize);
+        this.rootsX = (area.getSizeX() + maxCellSize - 1) >> rootShift;
+        int rootsZ = (area.getSizeY() + maxCellSize - 1) >> rootShift;
+
+        int rootCount = rootsX * rootsZ;
+        this.children = new int[rootCount * 2];
+        this.corners = new int[rootCount * 8];
+        this.nodeCount = rootCount;
+        this.tiles = new int[64];
+        this.samples = new LongIntMap(rootCount * 4, 0);
+
+        for (int rz = 0; rz < rootsZ; rz++) {
+            for (int rx = 0; rx < rootsX; rx++) {
+                build(rz * rootsX + rx, rx << rootShift, rz << rootShift, maxCellSize);
+            }
+        }
+
+        // only needed during construction
+        this.samples = null;
+        this.children = Arrays.copyOf(children, nodeCount);
+        this.corners = Arrays.copyOf(corners, nodeCount * 4);
+        this.tiles = Arrays.copyOf(tiles, tileDataSize);
+    }
+
+    /**
+     * @return the number of evaluations of the underlying height map during construction
+     */
+    int getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * @return the number of quadtree nodes
+     */
+    int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * @return the number of heights that are stored in plain tiles
+     */
+    int getTileDataSize() {
+        return tileDataSize;
+    }
+
+    private void build(int node, int x0, int z0, int size) {
+        int c = node * 4;
+        corners[c] = sample(x0, z0);
+        corners[c + 1] = sample(x0 + size, z0);
+        corners[c + 2] = sample(x0, z0 + size);
+        corners[c + 3] = sample(x0 + size, z0 + size);
+
+        if (size == 1 || isAccurate(node, x0, z0, size)) {
+            children[node] = LEAF;
+            return;
+        }
+
+        int firstNode = nodeCount;
+        int firstTile = tileDataSize;
+        int first = allocate();
+        children[node] = first;
+        int half = size / 2;
+        build(first, x0, z0, half);
+        build(first + 1, x0 + half, z0, half);
+        build(first + 2, x0, z0 + half, half);
+        build(first + 3, x0 + half, z0 + half, half);
+
+        // the subtree occupies the last allocated nodes and tiles, so it can be dropped again
+        long subtreeInts = (long) (nodeCount - firstNode) * INTS_PER_NODE + (tileDataSize - firstTile);
+        if (subtreeInts > (long) size * size) {
+            nodeCount = firstNode;
+            tileDataSize = firstTile;
+            children[node] = storeTile(x0, z0, size);
+        }
+    }
+
+    /**
+     * Tests the points of the next finer lattice level within the cell. These are exactly the points
+     * the child cells would need as corners, so no sample is wasted if the test fails.
+     */
+    private boolean isAccurate(int node, int x0, int z0, int size) {
+        int half = size / 2;
+        for (int dz = 0; dz <= size; dz += half) {
+            for (int dx = 0; dx <= size; dx += half) {
+                if ((dx == half || dz == half)
+                        && Math.abs(sample(x0 + dx, z0 + dz) - interpolate(node, dx, dz, size)) > tolerance) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private int allocate() {
+        int first = nodeCount;
+        nodeCount += 4;
+        if (nodeCount > children.length) {
+            int capacity = Math.max(nodeCount, children.length * 2);
+            children = Arrays.copyOf(children, capacity);
+            corners = Arrays.copyOf(corners, capacity * 4);
+        }
+        return first;
+    }
+
+    private int storeTile(int x0, int z0, int size) {
+        int start = tileDataSize;
+        tileDataSize += size * size;
+        if (tileDataSize > tiles.length) {
+            tiles = Arrays.copyOf(tiles, Math.max(tileDataSize, tiles.length * 2));
+        }
+        // blocks outside the area are never looked up
+        int width = Math.min(size, area.getSizeX() - x0);
+        int height = Math.min(size, area.getSizeY() - z0);
+        for (int dz = 0; dz < height; dz++) {
+            for (int dx = 0; dx < width; dx++) {
+                tiles[start + dz * size + dx] = sample(x0 + dx, z0 + dz);
+            }
+        }
+        return TILE - start;
+    }
+
+    private int sample(int lx, int lz) {
+        long key = PackedCoordinates.pack(lx, lz);
+        if (samples.containsKey(key)) {
+            return samples.get(key);
+        }
+        int value = hm.apply(area.minX() + lx, area.minY() + lz);
+        samples.put(key, value);
+        sampleCount++;
+        return value;
+    }
+
+    @Override
+    public void setStats(HeightMapStats stats) {
+        this.stats = stats;
+    }
+
+    @Override
+    public long getSizeInBytes() {
+        return (long) (children.length + corners.length + tiles.length) * Integer.BYTES;
+    }
+
+    @Override
+    public int apply(int x, int z) {
+        boolean xOk = x >= area.minX() && x < area.minX() + area.getSizeX();
+        boolean zOk = z >= area.minY() && z < area.minY() + area.getSizeY();
+
+        if (xOk && zOk) {
+            HeightMapStats counters = stats;
+            if (counters != null) {
+                counters.recordHit();
+            }
+            return lookup(x - area.minX(), z - area.minY());
+        }
+
+        HeightMapStats counters = stats;
+        if (counters != null) {
+            counters.recordFallback();
+        }
+
+        return hm.apply(x, z);
+    }
+
+    @Override
+    public void fill(Rectanglei target, int[] dest, int offset, int stride) {
+        boolean xOk = target.minX() >= area.minX() && target.minX() + target.getSizeX() <= area.minX() + area.getSizeX();
+        boolean zOk = target.minY() >= area.minY() && target.minY() + target.getSizeY() <= area.minY() + area.getSizeY();
+
+        if (!xOk || !zOk) {
+            MeasuredHeightMap.super.fill(target, dest, offset, stride);
+            return;
+        }
+
+        HeightMapStats counters = stats;
+        if (counters != null) {
+            counters.recordHits((long) target.getSizeX() * target.getSizeY());
+        }
+
+        int lx0 = target.minX() - area.minX();
+        int lz0 = target.minY() - area.minY();
+        for (int z = 0; z < target.getSizeY(); z++) {
+            int idx = offset + z * stride;
+            for (int x = 0; x < target.getSizeX(); x++) {
+                dest[idx + x] = lookup(lx0 + x, lz0 + z);
+            }
+        }
+    }
+
+    private int lookup(int lx, int lz) {
+        int node = (lz >> rootShift) * rootsX + (lx >> rootShift);
+        int size = 1 << rootShift;
+        int x0 = lx & ~(size - 1);
+        int z0 = lz & ~(size - 1);
+
+        while (children[node] >= 0) {
+            size >>= 1;
+            int qx = (lx - x0) >= size ? 1 : 0;
+            int qz = (lz - z0) >= size ? 1 : 0;
+            x0 += qx * size;
+            z0 += qz * size;
+            node = children[node] + qz * 2 + qx;
+        }
+
+        if (children[node] == LEAF) {
+            return interpolate(node, lx - x0, lz - z0, size);
+        }
+        return tiles[TILE - children[node] + (lz - z0) * size + (lx - x0)];
+    }
+
+    /**
+     * Fixed-point bilinear interpolation within a cell, rounded like {@link CachingLerpHeightMap}.
+     */
+    private int interpolate(int node, int dx, int dz, int size) {
+        int c = node * 4;
+        long wx0 = size - dx;
+        long wz0 = size - dz;
+        long min = corners[c] * wx0 + corners[c + 1] * (long) dx;
+        long max = corners[c + 2] * wx0 + corners[c + 3] * (long) dx;
+        long v = min * wz0 + max * dz;
+
+        int shift = 2 * Integer.numberOfTrailingZeros(size);
+        long bias = (49L << shift) / 100;
+        return (int) ((v + bias) >> shift);
+    }
+}
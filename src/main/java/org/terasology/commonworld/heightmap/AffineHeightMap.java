@@ -0,0 +1,78 @@
+/*
+ * Copyright 2013 MovingBlocks
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.terasology.commonworld.heightmap;
+
+import org.terasology.joml.geom.Rectanglei;
+
+/**
+ * An implementation that returns other.height * scale + offset.
+ * Since int arithmetic wraps around consistently, nested instances can be folded into one.
+ */
+class AffineHeightMap implements HeightMap {
+
+    private final HeightMap base;
+    private final int scale;
+    private final int offset;
+
+    /**
+     * @param base the base height map
+     * @param scale the height scale factor
+     * @param offset the height offset
+     */
+    AffineHeightMap(HeightMap base, int scale, int offset) {
+        this.base = base;
+        this.scale = scale;
+        this.offset = offset;
+    }
+
+    /**
+     * @return the base height map
+     */
+    HeightMap getBase() {
+        return base;
+    }
+
+    /**
+     * @return the height scale factor
+     */
+    int getScale() {
+        return scale;
+    }
+
+    /**
+     * @return the height offset
+     */
+    int getOffset() {
+        return offset;
+    }
+
+    @Override
+    public int apply(int x, int z) {
+        return base.apply(x, z) * scale + offset;
+    }
+
+    @Override
+    public void fill(Rectanglei area, int[] dest, int destOffset, int stride) {
+        base.fill(area, dest, destOffset, stride);
+        for (int z = 0; z < area.getSizeY(); z++) {
+            int idx = destOffset + z * stride;
+            for (int x = 0; x < area.getSizeX(); x++) {
+                dest[idx + x] = dest[idx + x] * scale + offset;
+            }
+        }
+    }
+}
@@ -0,0 +1,179 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.commonworld.heightmap;
+
+import com.google.common.base.Preconditions;
+import org.terasology.joml.geom.Rectanglei;
+
+/**
+ * A cache that stores a rectangular area on a coarse lattice and interpolates values
+ * with Catmull-Rom splines. In contrast to bi-linear interpolation, the result has no creases
+ * at the lattice lines, which permits much coarser lattices.
+ */
+class CachingCubicHeightMap implements MeasuredHeightMap, HeightMapListener {
+
+    private final int[] height;
+    private final Rectanglei area;
+    private final HeightMap hm;
+    private final int scale;
+    private final int latticeWidth;
+    private final int latticeHeight;
+
+    /**
+     * The four spline weights for every sub-lattice offset 0..scale-1
+     */
+    private final double[] weights;
+
+    private volatile HeightMapStats stats;
+
+    /**
+     * @param area the area to cache
+     * @param hm the height map to use
+     * @param scale the lattice spacing
+     */
+    CachingCubicHeightMap(Rectanglei area, HeightMap hm, int scale) {
+        Preconditions.checkArgument(scale > 0, "scale must be positive (is %s)", scale);
+
+        this.area = area;
+        this.hm = hm;
+        this.scale = scale;
+
+        // lattice coords run from -1 to cells + 2 to provide all neighbors of the last cell
+        int cellsX = (area.getSizeX() + scale - 1) / scale;
+        int cellsZ = (area.getSizeY() + scale - 1) / scale;
+        this.latticeWidth = cellsX + 4;
+        this.latticeHeight = cellsZ + 4;
+        this.height = new int[latticeWidth * latticeHeight];
+
+        for (int z = 0; z < latticeHeight; z++) {
+            for (int x = 0; x < latticeWidth; x++) {
+                height[z * latticeWidth + x] = hm.apply(area.minX() + (x - 1) * scale, area.minY() + (z - 1) * scale);
+            }
+        }
+
+        this.weights = new double[scale * 4];
+        for (int f = 0; f < scale; f++) {
+            double t = f / (double) scale;
+            double t2 = t * t;
+            double t3 = t2 * t;
+            weights[f * 4 + 0] = 0.5 * (-t3 + 2 * t2 - t);
+            weights[f * 4 + 1] = 0.5 * (3 * t3 - 5 * t2 + 2);
+            weights[f * 4 + 2] = 0.5 * (-3 * t3 + 4 * t2 + t);
+            weights[f * 4 + 3] = 0.5 * (t3 - t2);
+        }
+    }
+
+    /**
+     * Recomputes all lattice points (including the border) that are inside the changed area
+     * @param changed the changed area
+     */
+    @Override
+    public void onHeightChanged(Rectanglei changed) {
+        // lattice index i is located at area.min + (i - 1) * scale
+        int x0 = Math.max(0, 1 - Math.floorDiv(area.minX() - changed.minX(), scale));
+        int z0 = Math.max(0, 1 - Math.floorDiv(area.minY() - changed.minY(), scale));
+        int x1 = Math.min(latticeWidth - 1, 1 + Math.floorDiv(changed.minX() + changed.getSizeX() - 1 - area.minX(), scale));
+        int z1 = Math.min(latticeHeight - 1, 1 + Math.floorDiv(changed.minY() + changed.getSizeY() - 1 - area.minY(), scale));
+        for (int z = z0; z <= z1; z++) {
+            for (int x = x0; x <= x1; x++) {
+                height[z * latticeWidth + x] = hm.apply(area.minX() + (x - 1) * scale, area.minY() + (z - 1) * scale);
+            }
+        }
+    }
+
+    @Override
+    public void setStats(HeightMapStats stats) {
+        this.stats = stats;
+    }
+
+    @Override
+    public long getSizeInBytes() {
+        return (long) height.length * Integer.BYTES + (long) weights.length * Double.BYTES;
+    }
+
+    @Override
+    public int apply(int x, int z) {
+        boolean xOk = (x >= area.minX()) && (x <= area.maxX());
+        boolean zOk = (z >= area.minY()) && (z <= area.maxY());
+
+        if (xOk && zOk) {
+            HeightMapStats counters = stats;
+            if (counters != null) {
+                counters.recordHit();
+            }
+            int lx = x - area.minX();
+            int lz = z - area.minY();
+            int cx = lx / scale;
+            int cz = lz / scale;
+            int wx = (lx - cx * scale) * 4;
+            int wz = (lz - cz * scale) * 4;
+
+            // same order of operations as in fill() to get identical results
+            double res = weights[wx] * vertical(cz, cx, wz)
+                    + weights[wx + 1] * vertical(cz, cx + 1, wz)
+                    + weights[wx + 2] * vertical(cz, cx + 2, wz)
+                    + weights[wx + 3] * vertical(cz, cx + 3, wz);
+            return (int) Math.floor(res + 0.49);
+        }
+
+        HeightMapStats counters = stats;
+        if (counters != null) {
+            counters.recordFallback();
+        }
+
+        return hm.apply(x, z);
+    }
+
+    @Override
+    public void fill(Rectanglei target, int[] dest, int offset, int stride) {
+        boolean xOk = (target.minX() >= area.minX()) && (target.minX() + target.getSizeX() - 1 <= area.maxX());
+        boolean zOk = (target.minY() >= area.minY()) && (target.minY() + target.getSizeY() - 1 <= area.maxY());
+
+        if (!xOk || !zOk) {
+            MeasuredHeightMap.super.fill(target, dest, offset, stride);
+            return;
+        }
+
+        HeightMapStats counters = stats;
+        if (counters != null) {
+            counters.recordHits((long) target.getSizeX() * target.getSizeY());
+        }
+
+        int lx0 = target.minX() - area.minX();
+        int lx1 = lx0 + target.getSizeX();
+        int cx0 = lx0 / scale;
+        int cx1 = (lx1 - 1) / scale;
+
+        // vertically interpolated lattice columns of the current row
+        double[] columns = new double[cx1 - cx0 + 4];
+
+        for (int z = 0; z < target.getSizeY(); z++) {
+            int lz = target.minY() - area.minY() + z;
+            int cz = lz / scale;
+            int wz = (lz - cz * scale) * 4;
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = vertical(cz, cx0 + i, wz);
+            }
+
+            int idx = offset + z * stride;
+            for (int lx = lx0; lx < lx1; lx++) {
+                int cx = lx / scale;
+                int wx = (lx - cx * scale) * 4;
+                int c = cx - cx0;
+                double res = weights[wx] * columns[c]
+                        + weights[wx + 1] * columns[c + 1]
+                        + weights[wx + 2] * columns[c + 2]
+                        + weights[wx + 3] * columns[c + 3];
+                dest[idx++] = (int) Math.floor(res + 0.49);
+            }
+        }
+    }
+
+    private double vertical(int cz, int col, int wz) {
+        return weights[wz] * height[cz * latticeWidth + col]
+                + weights[wz + 1] * height[(cz + 1) * latticeWidth + col]
+                + weights[wz + 2] * height[(cz + 2) * latticeWidth + col]
+                + weights[wz + 3] * height[(cz + 3) * latticeWidth + col];
+    }
+}
@@ -3,52 +3,178 @@
 
 package org.terasology.commonworld.heightmap;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.terasology.joml.geom.Rectanglei;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
 /**
- * A cache that stores a rectangular area
+ * A cache that stores a rectangular area. The area is split into square blocks that are stored
+ * in the most compact representation their value range permits (see {@link PackedHeightTile}).
  */
-class CachingHeightMap implements HeightMap {
+class CachingHeightMap implements MeasuredHeightMap, HeightMapListener {
 
-    private static final Logger logger = LoggerFactory.getLogger(CachingHeightMap.class);
+    private static final int TILE_SHIFT = 6;
+    private static final int TILE_SIZE = 1 << TILE_SHIFT;
+    private static final int TILE_MASK = TILE_SIZE - 1;
 
-    private final short[] height;
+    private final PackedHeightTile[] tiles;
+    private final int tilesX;
+    private final int tilesZ;
     private final Rectanglei area;
     private final HeightMap hm;
+    private volatile HeightMapStats stats;
 
     /**
      * @param area the area to cache
      * @param hm the height map to use
      */
     public CachingHeightMap(Rectanglei area, HeightMap hm) {
+        this(area, hm, true);
+    }
+
+    private CachingHeightMap(Rectanglei area, HeightMap hm, boolean precompute) {
         this.area = area;
         this.hm = hm;
-        this.height = new short[area.getSizeX() * area.getSizeY()];
+        this.tilesX = (area.getSizeX() + TILE_MASK) >> TILE_SHIFT;
+        this.tilesZ = (area.getSizeY() + TILE_MASK) >> TILE_SHIFT;
+        this.tiles = new PackedHeightTile[tilesX * tilesZ];
+
+        if (precompute) {
+            computeTileRows(0, tilesZ);
+        }
+    }
 
-        for (int z = 0; z < area.getSizeY(); z++) {
-            for (int x = 0; x < area.getSizeX(); x++) {
-                int y = hm.apply(x + area.minX(), z + area.minY());
-                height[z * area.getSizeX() + x] = (short) y;
+    /**
+     * Computes the cache content in parallel. The result is identical to the sequential constructor.
+     * @param area the area to cache
+     * @param hm the height map to use - it must be thread-safe
+     * @param executor the executor that computes bands of rows
+     * @return a future that completes once all rows have been computed
+     */
+    static CompletableFuture<HeightMap> createAsync(Rectanglei area, HeightMap hm, Executor executor) {
+        CachingHeightMap cache = new CachingHeightMap(area, hm, false);
+        return ParallelRows.run(cache.tilesZ, executor, cache::computeTileRows).thenApply(v -> cache);
+    }
+
+    private void computeTileRows(int fromRow, int toRow) {
+        int[] buffer = new int[TILE_SIZE * TILE_SIZE];
+        for (int tz = fromRow; tz < toRow; tz++) {
+            for (int tx = 0; tx < tilesX; tx++) {
+                computeTile(tx, tz, buffer);
             }
         }
     }
 
+    private void computeTile(int tx, int tz, int[] buffer) {
+        Rectanglei rc = getTileArea(tx, tz);
+        hm.fill(rc, buffer, 0, rc.getSizeX());
+        tiles[tz * tilesX + tx] = new PackedHeightTile(buffer, 0, rc.getSizeX() * rc.getSizeY());
+    }
+
+    /**
+     * Recomputes all blocks that intersect the changed area
+     * @param changed the changed area
+     */
+    @Override
+    public void onHeightChanged(Rectanglei changed) {
+        int lx0 = Math.max(changed.minX(), area.minX()) - area.minX();
+        int lz0 = Math.max(changed.minY(), area.minY()) - area.minY();
+        int lx1 = Math.min(changed.minX() + changed.getSizeX(), area.minX() + area.getSizeX()) - area.minX();
+        int lz1 = Math.min(changed.minY() + changed.getSizeY(), area.minY() + area.getSizeY()) - area.minY();
+        if (lx0 >= lx1 || lz0 >= lz1) {
+            return;
+        }
+
+        int[] buffer = new int[TILE_SIZE * TILE_SIZE];
+        for (int tz = lz0 >> TILE_SHIFT; tz <= (lz1 - 1) >> TILE_SHIFT; tz++) {
+            for (int tx = lx0 >> TILE_SHIFT; tx <= (lx1 - 1) >> TILE_SHIFT; tx++) {
+                computeTile(tx, tz, buffer);
+            }
+        }
+    }
+
+    private Rectanglei getTileArea(int tx, int tz) {
+        int minX = area.minX() + (tx << TILE_SHIFT);
+        int minZ = area.minY() + (tz << TILE_SHIFT);
+        int maxX = Math.min(minX + TILE_SIZE, area.minX() + area.getSizeX());
+        int maxZ = Math.min(minZ + TILE_SIZE, area.minY() + area.getSizeY());
+        return new Rectanglei(minX, minZ, maxX, maxZ);
+    }
+
+    private int getTileWidth(int tx) {
+        return Math.min(TILE_SIZE, area.getSizeX() - (tx << TILE_SHIFT));
+    }
+
+    @Override
+    public long getSizeInBytes() {
+        long total = 0;
+        for (PackedHeightTile tile : tiles) {
+            total += tile.getSizeInBytes();
+        }
+        return total;
+    }
+
+    @Override
+    public void setStats(HeightMapStats stats) {
+        this.stats = stats;
+    }
+
     @Override
     public int apply(int x, int z) {
         boolean xOk = x >= area.minX() && x < area.minX() + area.getSizeX();
         boolean zOk = z >= area.minY() && z < area.minY() + area.getSizeY();
 
         if (xOk && zOk) {
+            HeightMapStats counters = stats;
+            if (counters != null) {
+                counters.recordHit();
+            }
             int lx = x - area.minX();
             int lz = z - area.minY();
-            return height[lz * area.getSizeX() + lx];
+            int tx = lx >> TILE_SHIFT;
+            int tz = lz >> TILE_SHIFT;
+            PackedHeightTile tile = tiles[tz * tilesX + tx];
+            return tile.get((lz & TILE_MASK) * getTileWidth(tx) + (lx & TILE_MASK));
         }
 
-        logger.debug("Accessing height map outside cached bounds -- referring to uncached height map");
+        HeightMapStats counters = stats;
+        if (counters != null) {
+            counters.recordFallback();
+        }
 
         return hm.apply(x, z);
     }
 
+    @Override
+    public void fill(Rectanglei target, int[] dest, int offset, int stride) {
+        boolean xOk = target.minX() >= area.minX() && target.minX() + target.getSizeX() <= area.minX() + area.getSizeX();
+        boolean zOk = target.minY() >= area.minY() && target.minY() + target.getSizeY() <= area.minY() + area.getSizeY();
+
+        if (!xOk || !zOk) {
+            MeasuredHeightMap.super.fill(target, dest, offset, stride);
+            return;
+        }
+
+        HeightMapStats counters = stats;
+        if (counters != null) {
+            counters.recordHits((long) target.getSizeX() * target.getSizeY());
+        }
+
+        int lx0 = target.minX() - area.minX();
+        int lx1 = lx0 + target.getSizeX();
+        for (int z = 0; z < target.getSizeY(); z++) {
+            int lz = target.minY() - area.minY() + z;
+            int tz = lz >> TILE_SHIFT;
+            int lx = lx0;
+            while (lx < lx1) {
+                int tx = lx >> TILE_SHIFT;
+                int count = Math.min(lx1, (tx + 1) << TILE_SHIFT) - lx;
+                int index = (lz & TILE_MASK) * getTileWidth(tx) + (lx & TILE_MASK);
+                tiles[tz * tilesX + tx].get(index, dest, offset + z * stride + lx - lx0, count);
+                lx += count;
+            }
+        }
+    }
+
 }
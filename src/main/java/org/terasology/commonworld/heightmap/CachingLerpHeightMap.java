@@ -3,24 +3,27 @@
 
 package org.terasology.commonworld.heightmap;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import com.google.common.math.IntMath;
 import org.terasology.joml.geom.Rectanglei;
-import org.terasology.math.TeraMath;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * A cache that stores a rectangular area and interpolates values bi-linearly
  */
-class CachingLerpHeightMap implements HeightMap {
-
-    private static final Logger logger = LoggerFactory.getLogger(CachingLerpHeightMap.class);
+class CachingLerpHeightMap implements MeasuredHeightMap, HeightMapListener {
 
-    private final short[] height;
+    private final int[] height;
     private final Rectanglei area;
     private final HeightMap hm;
     private final int scale;
-    private int scaledWidth;
-    private int scaledHeight;
+    private final int scaledWidth;
+    private final int scaledHeight;
+    private final int scaleShift;
+    private final long roundingBias;
+
+    private volatile HeightMapStats stats;
 
     /**
      * @param area the area to cache
@@ -28,69 +31,190 @@ class CachingLerpHeightMap implements HeightMap {
      * @param scale the scale level
      */
     public CachingLerpHeightMap(Rectanglei area, HeightMap hm, int scale) {
+        this(area, hm, scale, true);
+    }
+
+    private CachingLerpHeightMap(Rectanglei area, HeightMap hm, int scale, boolean precompute) {
         this.area = area;
         this.scale = scale;
         this.hm = hm;
 
-        this.scaledWidth = area.getSizeX() / scale + 1;
-        this.scaledHeight = area.getSizeY() / scale + 1;
+        // if scale is not a divisor of the width/height -> round up
+        this.scaledWidth = area.getSizeX() / scale + 1 + (area.getSizeX() % scale > 0 ? 1 : 0);
+        this.scaledHeight = area.getSizeY() / scale + 1 + (area.getSizeY() % scale > 0 ? 1 : 0);
 
-        // if scale is not a divisor of the width -> round up
-        if (area.getSizeX() % scale > 0) {
-            scaledWidth++;
-        }
+        this.height = new int[scaledWidth * scaledHeight];
+
+        // power-of-two scales use shifts instead of divisions
+        this.scaleShift = IntMath.isPowerOfTwo(scale) ? Integer.numberOfTrailingZeros(scale) : -1;
+        this.roundingBias = 49L * scale * scale / 100;
 
-        // if scale is not a divisor of the height -> round up
-        if (area.getSizeY() % scale > 0) {
-            scaledHeight++;
+        if (precompute) {
+            computeRows(0, scaledHeight);
         }
+    }
 
-        this.height = new short[scaledWidth * scaledHeight];
+    /**
+     * Computes the lattice in parallel. The result is identical to the sequential constructor.
+     * @param area the area to cache
+     * @param hm the height map to use - it must be thread-safe
+     * @param scale the scale level
+     * @param executor the executor that computes bands of lattice rows
+     * @return a future that completes once all rows have been computed
+     */
+    static CompletableFuture<HeightMap> createAsync(Rectanglei area, HeightMap hm, int scale, Executor executor) {
+        CachingLerpHeightMap cache = new CachingLerpHeightMap(area, hm, scale, false);
+        return ParallelRows.run(cache.scaledHeight, executor, cache::computeRows).thenApply(v -> cache);
+    }
 
+    private void computeRows(int fromRow, int toRow) {
         // area is 1 larger
-        for (int z = 0; z < scaledHeight; z++) {
+        for (int z = fromRow; z < toRow; z++) {
             for (int x = 0; x < scaledWidth; x++) {
-                int y = hm.apply(area.minX() + x * scale, area.minY() + z * scale);
-                height[z * scaledWidth + x] = (short) y;
+                height[z * scaledWidth + x] = hm.apply(area.minX() + x * scale, area.minY() + z * scale);
             }
         }
     }
 
+    /**
+     * Recomputes all lattice points that are inside the changed area. Changes between lattice points
+     * are not visible in the interpolated values, so nothing else needs to be updated.
+     * @param changed the changed area
+     */
+    @Override
+    public void onHeightChanged(Rectanglei changed) {
+        // ceiling of (changed.min - area.min) / scale
+        int x0 = Math.max(0, -Math.floorDiv(area.minX() - changed.minX(), scale));
+        int z0 = Math.max(0, -Math.floorDiv(area.minY() - changed.minY(), scale));
+        int x1 = Math.min(scaledWidth - 1, Math.floorDiv(changed.minX() + changed.getSizeX() - 1 - area.minX(), scale));
+        int z1 = Math.min(scaledHeight - 1, Math.floorDiv(changed.minY() + changed.getSizeY() - 1 - area.minY(), scale));
+        for (int z = z0; z <= z1; z++) {
+            for (int x = x0; x <= x1; x++) {
+                height[z * scaledWidth + x] = hm.apply(area.minX() + x * scale, area.minY() + z * scale);
+            }
+        }
+    }
+
+    @Override
+    public void setStats(HeightMapStats stats) {
+        this.stats = stats;
+    }
+
+    @Override
+    public long getSizeInBytes() {
+        return (long) height.length * Integer.BYTES;
+    }
+
     @Override
     public int apply(int x, int z) {
         boolean xOk = (x >= area.minX()) && (x <= area.maxX());
         boolean zOk = (z >= area.minY()) && (z <= area.maxY());
 
         if (xOk && zOk) {
+            HeightMapStats counters = stats;
+            if (counters != null) {
+                counters.recordHit();
+            }
+            return interpolate(x, z);
+        }
 
-            double lx = (x - area.minX()) / (double) scale;
-            double lz = (z - area.minY()) / (double) scale;
+        HeightMapStats counters = stats;
+        if (counters != null) {
+            counters.recordFallback();
+        }
 
-            int minX = TeraMath.floorToInt(lx);
-            int maxX = minX + 1;
+        return hm.apply(x, z);
+    }
 
-            int minZ = TeraMath.floorToInt(lz);
-            int maxZ = minZ + 1;
+    @Override
+    public void fill(Rectanglei target, int[] dest, int offset, int stride) {
+        boolean xOk = (target.minX() >= area.minX()) && (target.minX() + target.getSizeX() - 1 <= area.maxX());
+        boolean zOk = (target.minY() >= area.minY()) && (target.minY() + target.getSizeY() - 1 <= area.maxY());
 
-            int q00 = getHeight(minX, minZ);
-            int q10 = getHeight(maxX, minZ);
-            int q01 = getHeight(minX, maxZ);
-            int q11 = getHeight(maxX, maxZ);
+        if (!xOk || !zOk) {
+            MeasuredHeightMap.super.fill(target, dest, offset, stride);
+            return;
+        }
 
-            double ipx = lx - minX;
-            double ipz = lz - minZ;
+        HeightMapStats counters = stats;
+        if (counters != null) {
+            counters.recordHits((long) target.getSizeX() * target.getSizeY());
+        }
 
-            double min = TeraMath.lerp(q00, q10, ipx);
-            double max = TeraMath.lerp(q01, q11, ipx);
+        int lx0 = target.minX() - area.minX();
+        int lx1 = lx0 + target.getSizeX();
+        for (int z = 0; z < target.getSizeY(); z++) {
+            int lz = target.minY() - area.minY() + z;
+            int cz = cell(lz);
+            int row0 = cz * scaledWidth;
+            int row1 = Math.min(cz + 1, scaledHeight - 1) * scaledWidth;
+            long wz1 = lz - cz * scale;
+            long wz0 = scale - wz1;
+
+            int idx = offset + z * stride;
+            int lx = lx0;
+            while (lx < lx1) {
+                // all samples within a lattice cell share the same four corners
+                int cx = cell(lx);
+                int cx1 = Math.min(cx + 1, scaledWidth - 1);
+                long c0 = height[row0 + cx] * wz0 + height[row1 + cx] * wz1;
+                long c1 = height[row0 + cx1] * wz0 + height[row1 + cx1] * wz1;
+                long step = c1 - c0;
+                long v = c0 * scale + step * (lx - cx * scale);
+                int end = Math.min(lx1, (cx + 1) * scale);
+                while (lx < end) {
+                    dest[idx++] = normalize(v);
+                    v += step;
+                    lx++;
+                }
+            }
+        }
+    }
 
-            double res = TeraMath.lerp(min, max, ipz);
+    /**
+     * Fixed-point bilinear interpolation - all weights are multiples of 1 / scale.
+     */
+    private int interpolate(int x, int z) {
+        int lx = x - area.minX();
+        int lz = z - area.minY();
 
-            return TeraMath.floorToInt(res + 0.49);
-        }
+        // the upper lattice point has zero weight on the last lattice row/column
+        int minX = cell(lx);
+        int maxX = Math.min(minX + 1, scaledWidth - 1);
 
-        logger.debug("Accessing height map outside cached bounds -- referring to uncached height map");
+        int minZ = cell(lz);
+        int maxZ = Math.min(minZ + 1, scaledHeight - 1);
 
-        return hm.apply(x, z);
+        int q00 = getHeight(minX, minZ);
+        int q10 = getHeight(maxX, minZ);
+        int q01 = getHeight(minX, maxZ);
+        int q11 = getHeight(maxX, maxZ);
+
+        long wx1 = lx - minX * scale;
+        long wx0 = scale - wx1;
+        long wz1 = lz - minZ * scale;
+        long wz0 = scale - wz1;
+
+        long min = q00 * wx0 + q10 * wx1;
+        long max = q01 * wx0 + q11 * wx1;
+
+        return normalize(min * wz0 + max * wz1);
+    }
+
+    private int cell(int local) {
+        return (scaleShift >= 0) ? local >> scaleShift : local / scale;
+    }
+
+    /**
+     * @param v the interpolated value, multiplied by scale^2
+     * @return floor(v / scale^2 + 0.49)
+     */
+    private int normalize(long v) {
+        // for integer v: floor((v + 0.49 * s * s) / (s * s)) == floor((v + floor(0.49 * s * s)) / (s * s))
+        if (scaleShift >= 0) {
+            return (int) ((v + roundingBias) >> (2 * scaleShift));
+        }
+        return (int) Math.floorDiv(v + roundingBias, (long) scale * scale);
     }
 
     private int getHeight(int lx, int lz) {
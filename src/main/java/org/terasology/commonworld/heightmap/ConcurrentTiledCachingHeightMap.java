@@ -0,0 +1,139 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.commonworld.heightmap;
+
+import com.google.common.base.Preconditions;
+import org.terasology.commonworld.PackedCoordinates;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A thread-safe variant of {@link TiledCachingHeightMap} that can be shared between threads.
+ * Tiles are distributed over independently locked stripes, each of which evicts its least recently
+ * used tile. A missing tile is computed by the first thread that requests it; other threads that
+ * need the same tile wait for that result instead of computing it again.
+ * The underlying height map must support concurrent calls.
+ */
+class ConcurrentTiledCachingHeightMap extends AbstractTiledHeightMap {
+
+    /**
+     * The minimum capacity of a stripe (unless there are fewer tiles in total)
+     */
+    private static final int MIN_TILES_PER_STRIPE = 8;
+
+    private final HeightMap hm;
+    private final Stripe[] stripes;
+    private final int stripeMask;
+
+    /**
+     * @param hm the height map to use (must be thread-safe)
+     * @param tileSize the edge length of a tile
+     * @param maxTiles the maximum number of tiles to keep in memory
+     * @param concurrency the expected number of concurrently accessing threads
+     */
+    ConcurrentTiledCachingHeightMap(HeightMap hm, int tileSize, int maxTiles, int concurrency) {
+        super(tileSize);
+        Preconditions.checkArgument(maxTiles > 0, "maxTiles must be positive (is %s)", maxTiles);
+        Preconditions.checkArgument(concurrency > 0, "concurrency must be positive (is %s)", concurrency);
+
+        this.hm = hm;
+
+        // four stripes per thread keep collisions rare, but every stripe is a separate LRU list
+        // and needs enough tiles so that a few hot tiles in the same stripe don't evict each other
+        int wanted = Math.min(concurrency * 4, maxTiles / MIN_TILES_PER_STRIPE);
+        int stripeCount = Integer.highestOneBit(Math.max(1, wanted));
+        this.stripes = new Stripe[stripeCount];
+        this.stripeMask = stripeCount - 1;
+        for (int i = 0; i < stripeCount; i++) {
+            int capacity = maxTiles / stripeCount + (i < maxTiles % stripeCount ? 1 : 0);
+            stripes[i] = new Stripe(capacity);
+        }
+    }
+
+    @Override
+    protected int[] getTile(int tx, int tz, int values) {
+        long key = PackedCoordinates.pack(tx, tz);
+        Stripe stripe = stripes[spread(key) & stripeMask];
+
+        CompletableFuture<int[]> tile;
+        boolean owner = false;
+        synchronized (stripe) {
+            int slot = stripe.slots.get(key);
+            if (slot == TileSlots.NONE) {
+                slot = stripe.slots.claim(key);
+                stripe.tiles[slot] = new CompletableFuture<>();
+                owner = true;
+            }
+            tile = stripe.tiles[slot];
+        }
+        recordAccess(!owner, values);
+
+        if (owner) {
+            // compute outside of the lock - concurrent requests for this tile block in join() below
+            try {
+                int[] data = new int[tileSize * tileSize];
+                hm.fill(getTileArea(tx, tz), data, 0, tileSize);
+                tile.complete(data);
+            } catch (Throwable e) {
+                // errors must complete the future, too - otherwise waiting threads would block forever
+                synchronized (stripe) {
+                    int slot = stripe.slots.get(key);
+                    if (slot != TileSlots.NONE && stripe.tiles[slot] == tile) {
+                        stripe.slots.remove(key);
+                        stripe.tiles[slot] = null;
+                    }
+                }
+                tile.completeExceptionally(e);
+                throw e;
+            }
+        }
+
+        return tile.join();
+    }
+
+    @Override
+    public long getSizeInBytes() {
+        long count = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                for (CompletableFuture<int[]> tile : stripe.tiles) {
+                    if (tile != null) {
+                        count++;
+                    }
+                }
+            }
+        }
+        return count * tileSize * tileSize * Integer.BYTES;
+    }
+
+    @Override
+    protected void invalidateTiles(int tx0, int tz0, int tx1, int tz1) {
+        // tiles that are still being computed are completed for the threads that are already waiting,
+        // but later requests compute them again
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.slots.removeIf(key -> isInRange(key, tx0, tz0, tx1, tz1));
+            }
+        }
+    }
+
+    private static int spread(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 40);
+    }
+
+    /**
+     * A lock stripe with its own LRU bookkeeping
+     */
+    private static final class Stripe {
+        private final TileSlots slots;
+        private final CompletableFuture<int[]>[] tiles;
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Stripe(int capacity) {
+            this.slots = new TileSlots(capacity);
+            this.tiles = new CompletableFuture[capacity];
+        }
+    }
+}
@@ -16,6 +16,10 @@
 
 package org.terasology.commonworld.heightmap;
 
+import org.terasology.joml.geom.Rectanglei;
+
+import java.util.Arrays;
+
 /**
  * An implementation based on a constant value
  */
@@ -30,9 +34,24 @@ class ConstantHeightMap implements HeightMap {
         this.height = height;
     }
 
+    /**
+     * @return the height constant
+     */
+    int getHeight() {
+        return height;
+    }
+
     @Override
     public int apply(int x, int z) {
         return height;
     }
 
+    @Override
+    public void fill(Rectanglei area, int[] dest, int offset, int stride) {
+        for (int z = 0; z < area.getSizeY(); z++) {
+            int start = offset + z * stride;
+            Arrays.fill(dest, start, start + area.getSizeX(), height);
+        }
+    }
+
 }
@@ -3,44 +3,67 @@
 
 package org.terasology.commonworld.heightmap;
 
-import com.google.common.collect.Maps;
-
-import java.util.Map;
+import org.terasology.joml.geom.Rectanglei;
 
 /**
- * Converts height map data w.r.t. a map-based conversion
+ * Converts height map data w.r.t. a {@link HeightConverter}
  */
 public class ConvertingHeightMap implements HeightMap {
 
-    private final Map<Integer, Integer> converter = Maps.newHashMap();
-
     private final HeightMap heightMap;
 
+    private volatile HeightConverter converter;
+
     /**
      * @param heightMap the base height map
      */
     public ConvertingHeightMap(HeightMap heightMap) {
+        this(heightMap, HeightConverter.identity());
+    }
+
+    /**
+     * @param heightMap the base height map
+     * @param converter the conversion to apply
+     */
+    public ConvertingHeightMap(HeightMap heightMap, HeightConverter converter) {
         this.heightMap = heightMap;
+        this.converter = converter;
     }
 
     /**
-     * Adds a conversion
+     * Adds a conversion. This replaces the entire converter, so it is expensive.
+     * Readers that are already active continue to use the previous conversions.
      * @param from from
      * @param to to
+     * @deprecated create a {@link HeightConverter} through its builder and pass it to the constructor instead
      */
-    public void addConversion(Integer from, Integer to) {
-        converter.put(from, to);
+    @Deprecated
+    public synchronized void addConversion(Integer from, Integer to) {
+        converter = converter.toBuilder().add(from, to).build();
+    }
+
+    /**
+     * @return the current converter
+     */
+    public HeightConverter getConverter() {
+        return converter;
     }
 
     @Override
     public int apply(int x, int z) {
-        int val = heightMap.apply(x, z);
-        Integer result = converter.get(val);
+        return converter.convert(heightMap.apply(x, z));
+    }
 
-        if (result != null) {
-            return result;
+    @Override
+    public void fill(Rectanglei area, int[] dest, int offset, int stride) {
+        HeightConverter conv = converter;
+        heightMap.fill(area, dest, offset, stride);
+        if (conv.isIdentity()) {
+            return;
+        }
+        int width = area.getSizeX();
+        for (int z = 0; z < area.getSizeY(); z++) {
+            conv.convert(dest, offset + z * stride, width);
         }
-
-        return val;
     }
 }
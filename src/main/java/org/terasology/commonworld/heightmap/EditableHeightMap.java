@@ -0,0 +1,172 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.commonworld.heightmap;
+
+import com.google.common.base.Preconditions;
+import org.terasology.joml.geom.Rectanglei;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A height map layer that records modifications on top of a base height map
+ * (in an {@link OverlayHeightMap} that can be persisted).
+ * Modified areas are collected as dirty rectangles and passed on to all registered
+ * {@link HeightMapListener}s when {@link #flush()} is called, so that dependent caches
+ * can recompute only the affected parts.
+ * <br>
+ * Edits must be applied by a single thread at a time.
+ */
+public class EditableHeightMap implements HeightMap {
+
+    /**
+     * If there are more dirty regions, they are merged into a single bounding rectangle
+     */
+    private static final int MAX_DIRTY_REGIONS = 16;
+
+    private final OverlayHeightMap overlay;
+    private final List<Rectanglei> dirty = new ArrayList<>();
+    private final List<HeightMapListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param base the height map that provides all values that have not been edited
+     */
+    public EditableHeightMap(HeightMap base) {
+        this(new OverlayHeightMap(base));
+    }
+
+    /**
+     * @param overlay the overlay that stores the modifications, e.g. one that was read from disk
+     */
+    public EditableHeightMap(OverlayHeightMap overlay) {
+        this.overlay = overlay;
+    }
+
+    /**
+     * @return the overlay that stores all modifications
+     */
+    public OverlayHeightMap getOverlay() {
+        return overlay;
+    }
+
+    /**
+     * @param x the world x coord
+     * @param z the world z coord
+     * @param height the new height
+     */
+    public void set(int x, int z, int height) {
+        overlay.set(x, z, height);
+        markDirty(new Rectanglei(x, z, x + 1, z + 1));
+    }
+
+    /**
+     * @param area the area to modify
+     * @param height the new height for all cells in the area
+     */
+    public void setArea(Rectanglei area, int height) {
+        for (int z = area.minY(); z < area.minY() + area.getSizeY(); z++) {
+            for (int x = area.minX(); x < area.minX() + area.getSizeX(); x++) {
+                overlay.set(x, z, height);
+            }
+        }
+        markDirty(area);
+    }
+
+    /**
+     * @param listener the listener to add
+     */
+    public void addListener(HeightMapListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @param listener the listener to remove
+     */
+    public void removeListener(HeightMapListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Registers a height map that depends on this one, e.g. a cache created through {@link HeightMaps}.
+     * Dependents are notified in the order of registration, so register caches of caches last.
+     * @param dependent the dependent height map
+     * @throws IllegalArgumentException if the height map does not support change notifications
+     */
+    public void addDependent(HeightMap dependent) {
+        Preconditions.checkArgument(dependent instanceof HeightMapListener,
+                "%s does not support change notifications", dependent.getClass().getSimpleName());
+        addListener((HeightMapListener) dependent);
+    }
+
+    /**
+     * @return the areas that were modified since the last {@link #flush()}
+     */
+    public List<Rectanglei> getDirtyRegions() {
+        return Collections.unmodifiableList(new ArrayList<>(dirty));
+    }
+
+    /**
+     * Notifies all listeners about the areas that were modified since the last call
+     */
+    public void flush() {
+        List<Rectanglei> regions = new ArrayList<>(dirty);
+        dirty.clear();
+        for (Rectanglei region : regions) {
+            for (HeightMapListener listener : listeners) {
+                listener.onHeightChanged(region);
+            }
+        }
+    }
+
+    @Override
+    public int apply(int x, int z) {
+        return overlay.apply(x, z);
+    }
+
+    @Override
+    public void fill(Rectanglei area, int[] dest, int offset, int stride) {
+        overlay.fill(area, dest, offset, stride);
+    }
+
+    private void markDirty(Rectanglei area) {
+        Rectanglei merged = area;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 0; i < dirty.size(); i++) {
+                Rectanglei other = dirty.get(i);
+                if (touches(merged, other)) {
+                    merged = union(merged, other);
+                    dirty.remove(i);
+                    changed = true;
+                    break;
+                }
+            }
+        }
+        dirty.add(merged);
+
+        if (dirty.size() > MAX_DIRTY_REGIONS) {
+            Rectanglei bounds = dirty.get(0);
+            for (Rectanglei rc : dirty) {
+                bounds = union(bounds, rc);
+            }
+            dirty.clear();
+            dirty.add(bounds);
+        }
+    }
+
+    /**
+     * @return true if the rectangles overlap or share an edge
+     */
+    private static boolean touches(Rectanglei a, Rectanglei b) {
+        return a.minX() <= b.maxX() && b.minX() <= a.maxX() && a.minY() <= b.maxY() && b.minY() <= a.maxY();
+    }
+
+    private static Rectanglei union(Rectanglei a, Rectanglei b) {
+        return new Rectanglei(Math.min(a.minX(), b.minX()), Math.min(a.minY(), b.minY()),
+                Math.max(a.maxX(), b.maxX()), Math.max(a.maxY(), b.maxY()));
+    }
+}
@@ -0,0 +1,70 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.commonworld.heightmap;
+
+import java.util.Objects;
+
+/**
+ * An immutable cell of a height map - its world coordinates and its height
+ */
+public final class HeightCell {
+
+    private final int x;
+    private final int z;
+    private final int height;
+
+    /**
+     * @param x the world x coord
+     * @param z the world z coord
+     * @param height the height at (x, z)
+     */
+    public HeightCell(int x, int z, int height) {
+        this.x = x;
+        this.z = z;
+        this.height = height;
+    }
+
+    /**
+     * @return the world x coord
+     */
+    public int getX() {
+        return x;
+    }
+
+    /**
+     * @return the world z coord
+     */
+    public int getZ() {
+        return z;
+    }
+
+    /**
+     * @return the height
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof HeightCell)) {
+            return false;
+        }
+        HeightCell other = (HeightCell) obj;
+        return x == other.x && z == other.z && height == other.height;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(x, z, height);
+    }
+
+    @Override
+    public String toString() {
+        return "(" + x + ", " + z + "): " + height;
+    }
+}
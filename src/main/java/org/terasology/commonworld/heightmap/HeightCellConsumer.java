@@ -0,0 +1,18 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.commonworld.heightmap;
+
+/**
+ * Receives the height of a cell without boxing
+ */
+@FunctionalInterface
+public interface HeightCellConsumer {
+
+    /**
+     * @param x the world x coord
+     * @param z the world z coord
+     * @param height the height at (x, z)
+     */
+    void accept(int x, int z, int height);
+}
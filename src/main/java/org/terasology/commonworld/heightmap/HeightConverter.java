@@ -0,0 +1,186 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.commonworld.heightmap;
+
+/**
+ * An immutable mapping of height values. Heights without a conversion remain unchanged.
+ * Compact ranges are stored in a plain offset table, sparse ones in a primitive hash map.
+ * Instances are thread-safe.
+ */
+public final class HeightConverter {
+
+    private static final HeightConverter IDENTITY = new HeightConverter(0, new int[0], null);
+
+    /**
+     * The dense table is used if it has at most DENSE_FACTOR entries per conversion
+     * or at most DENSE_MIN_SIZE entries in total
+     */
+    private static final int DENSE_FACTOR = 4;
+    private static final int DENSE_MIN_SIZE = 256;
+
+    private final int min;
+
+    /**
+     * The difference (to - from) for all heights in [min, min + table.length) or null
+     */
+    private final int[] table;
+
+    /**
+     * The difference (to - from) for all converted heights or null
+     */
+    private final LongIntMap sparse;
+
+    private HeightConverter(int min, int[] table, LongIntMap sparse) {
+        this.min = min;
+        this.table = table;
+        this.sparse = sparse;
+    }
+
+    /**
+     * @return a converter that does not change any height
+     */
+    public static HeightConverter identity() {
+        return IDENTITY;
+    }
+
+    /**
+     * @return a new, empty builder
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return a new builder that contains all conversions of this converter
+     */
+    public Builder toBuilder() {
+        Builder builder = new Builder();
+        if (table != null) {
+            for (int i = 0; i < table.length; i++) {
+                if (table[i] != 0) {
+                    builder.deltas.put(min + i, table[i]);
+                }
+            }
+        } else {
+            sparse.forEach(builder.deltas::put);
+        }
+        return builder;
+    }
+
+    /**
+     * @return true if no height is changed
+     */
+    public boolean isIdentity() {
+        return this == IDENTITY;
+    }
+
+    /**
+     * @param height the height value
+     * @return the converted height value
+     */
+    public int convert(int height) {
+        if (table != null) {
+            int idx = height - min;
+            if (idx >= 0 && idx < table.length) {
+                return height + table[idx];
+            }
+            return height;
+        }
+        return height + sparse.get(height);
+    }
+
+    /**
+     * Converts all heights in place
+     * @param heights the height values
+     */
+    public void convert(int[] heights) {
+        convert(heights, 0, heights.length);
+    }
+
+    /**
+     * Converts a range of heights in place
+     * @param heights the height values
+     * @param offset the first index
+     * @param length the number of values
+     */
+    public void convert(int[] heights, int offset, int length) {
+        if (isIdentity()) {
+            return;
+        }
+        int end = offset + length;
+        if (table != null) {
+            int[] tab = table;
+            int base = min;
+            for (int i = offset; i < end; i++) {
+                int h = heights[i];
+                int idx = h - base;
+                if (idx >= 0 && idx < tab.length) {
+                    heights[i] = h + tab[idx];
+                }
+            }
+        } else {
+            for (int i = offset; i < end; i++) {
+                int h = heights[i];
+                heights[i] = h + sparse.get(h);
+            }
+        }
+    }
+
+    /**
+     * Collects conversions and creates immutable {@link HeightConverter} instances.
+     * Not thread-safe.
+     */
+    public static final class Builder {
+
+        // the difference (to - from) for every converted height - 0 means unchanged
+        private final LongIntMap deltas = new LongIntMap(16, 0);
+
+        private Builder() {
+        }
+
+        /**
+         * Adds or replaces a conversion
+         * @param from the original height
+         * @param to the converted height
+         * @return this builder
+         */
+        public Builder add(int from, int to) {
+            int delta = to - from;
+            if (delta == 0) {
+                deltas.remove(from);
+            } else {
+                deltas.put(from, delta);
+            }
+            return this;
+        }
+
+        /**
+         * @return a new converter that contains all conversions added so far
+         */
+        public HeightConverter build() {
+            int count = deltas.size();
+            if (count == 0) {
+                return IDENTITY;
+            }
+
+            long[] range = {Long.MAX_VALUE, Long.MIN_VALUE};
+            deltas.forEach((key, value) -> {
+                range[0] = Math.min(range[0], key);
+                range[1] = Math.max(range[1], key);
+            });
+
+            long size = range[1] - range[0] + 1;
+            if (size <= Math.max(DENSE_MIN_SIZE, (long) count * DENSE_FACTOR)) {
+                int lo = (int) range[0];
+                int[] table = new int[(int) size];
+                deltas.forEach((key, value) -> table[(int) (key - lo)] = value);
+                return new HeightConverter(lo, table, null);
+            }
+
+            LongIntMap sparse = new LongIntMap(count, 0);
+            deltas.forEach(sparse::put);
+            return new HeightConverter(0, null, sparse);
+        }
+    }
+}
@@ -0,0 +1,332 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.commonworld.heightmap;
+
+import com.google.common.base.Preconditions;
+import org.terasology.commonworld.symmetry.Symmetry;
+import org.terasology.joml.geom.Rectanglei;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Builds height map expressions as a graph of nodes. Every node is a {@link HeightMap} on its own,
+ * but when several outputs are evaluated over a region through {@link #evaluate(Rectanglei, Node...)},
+ * nodes that are shared by more than one output (or by several paths) are computed only once per tile.
+ * <br>
+ * Spatial operations (such as symmetries) read their input at other coordinates, so their input
+ * is evaluated point-wise and not shared.
+ */
+public final class HeightGraph {
+
+    private static final int TILE_SIZE = 64;
+
+    private HeightGraph() {
+        // avoid instantiation
+    }
+
+    /**
+     * @param hm the height map
+     * @return a node that provides the values of the given height map
+     */
+    public static Node source(HeightMap hm) {
+        if (hm instanceof Node) {
+            return (Node) hm;
+        }
+        return new Node() {
+            @Override
+            public int apply(int x, int z) {
+                return hm.apply(x, z);
+            }
+
+            @Override
+            void compute(Rectanglei area, Evaluation eval, int[] dest) {
+                hm.fill(area, dest, 0, area.getSizeX());
+            }
+        };
+    }
+
+    /**
+     * @param input the input node
+     * @param offset the height offset
+     * @return a node that returns input + offset
+     */
+    public static Node offset(Node input, int offset) {
+        return new UnaryNode(input) {
+            @Override
+            int map(int height) {
+                return height + offset;
+            }
+        };
+    }
+
+    /**
+     * @param input the input node
+     * @param scale the height scale factor
+     * @return a node that returns input * scale
+     */
+    public static Node scale(Node input, int scale) {
+        return new UnaryNode(input) {
+            @Override
+            int map(int height) {
+                return height * scale;
+            }
+        };
+    }
+
+    /**
+     * @param input the input node
+     * @param level the threshold level
+     * @param below the value for heights below the level
+     * @param above the value for heights at or above the level
+     * @return a node that returns one of two values, depending on the input height
+     */
+    public static Node threshold(Node input, int level, int below, int above) {
+        return new UnaryNode(input) {
+            @Override
+            int map(int height) {
+                return height < level ? below : above;
+            }
+        };
+    }
+
+    /**
+     * @param a the first input
+     * @param b the second input
+     * @return a node that returns the lower of both heights
+     */
+    public static Node min(Node a, Node b) {
+        return new BinaryNode(a, b) {
+            @Override
+            int combine(int ha, int hb) {
+                return Math.min(ha, hb);
+            }
+        };
+    }
+
+    /**
+     * @param a the first input
+     * @param b the second input
+     * @return a node that returns the higher of both heights
+     */
+    public static Node max(Node a, Node b) {
+        return new BinaryNode(a, b) {
+            @Override
+            int combine(int ha, int hb) {
+                return Math.max(ha, hb);
+            }
+        };
+    }
+
+    /**
+     * @param a the first input
+     * @param b the second input
+     * @return a node that returns the sum of both heights
+     */
+    public static Node add(Node a, Node b) {
+        return new BinaryNode(a, b) {
+            @Override
+            int combine(int ha, int hb) {
+                return ha + hb;
+            }
+        };
+    }
+
+    /**
+     * Blends linearly between two inputs. The result is rounded down.
+     * @param a the first input
+     * @param b the second input
+     * @param weight the weight of the second input in [0..total]
+     * @param total the sum of both weights
+     * @return a node that returns (a * (total - weight) + b * weight) / total
+     */
+    public static Node blend(Node a, Node b, int weight, int total) {
+        Preconditions.checkArgument(total > 0, "total must be > 0");
+        Preconditions.checkArgument(weight >= 0 && weight <= total, "weight must be in [0..total]");
+        return new BinaryNode(a, b) {
+            @Override
+            int combine(int ha, int hb) {
+                long sum = (long) ha * (total - weight) + (long) hb * weight;
+                return (int) Math.floorDiv(sum, total);
+            }
+        };
+    }
+
+    /**
+     * @param input the input node - it is evaluated point-wise
+     * @param sym the symmetry
+     * @return a node that mirrors its input
+     */
+    public static Node symmetric(Node input, Symmetry sym) {
+        return new SpatialNode(HeightMaps.symmetric(input, sym));
+    }
+
+    /**
+     * @param input the input node - it is evaluated point-wise
+     * @param scale the coordinate scale factor
+     * @return a node that returns the input at (x * scale, z * scale)
+     */
+    public static Node scalingArea(Node input, int scale) {
+        return new SpatialNode(HeightMaps.scalingArea(input, scale));
+    }
+
+    /**
+     * Evaluates several nodes over the same area. The area is processed in tiles and every node
+     * that is reachable from the outputs is computed at most once per tile.
+     * @param area the area to evaluate
+     * @param outputs the nodes to evaluate
+     * @return one array per output, in row-major order with a stride of area.getSizeX()
+     */
+    public static int[][] evaluate(Rectanglei area, Node... outputs) {
+        int width = area.getSizeX();
+        int[][] results = new int[outputs.length][width * area.getSizeY()];
+        Evaluation eval = new Evaluation();
+        for (int tz = area.minY(); tz < area.maxY(); tz += TILE_SIZE) {
+            for (int tx = area.minX(); tx < area.maxX(); tx += TILE_SIZE) {
+                Rectanglei tile = new Rectanglei(tx, tz,
+                        Math.min(tx + TILE_SIZE, area.maxX()), Math.min(tz + TILE_SIZE, area.maxY()));
+                eval.begin(tile);
+                int tileWidth = tile.getSizeX();
+                int offset = (tz - area.minY()) * width + (tx - area.minX());
+                for (int i = 0; i < outputs.length; i++) {
+                    int[] values = eval.get(outputs[i]);
+                    for (int z = 0; z < tile.getSizeY(); z++) {
+                        System.arraycopy(values, z * tileWidth, results[i], offset + z * width, tileWidth);
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * A node in a height map expression graph. Instances are created through the factory methods
+     * of {@link HeightGraph}.
+     */
+    public abstract static class Node implements HeightMap {
+
+        Node() {
+            // only created through the factory methods
+        }
+
+        /**
+         * Computes all heights of the area
+         * @param area the area
+         * @param eval provides the values of the input nodes for the same area
+         * @param dest the target array in row-major order with a stride of area.getSizeX()
+         */
+        abstract void compute(Rectanglei area, Evaluation eval, int[] dest);
+
+        @Override
+        public void fill(Rectanglei area, int[] dest, int offset, int stride) {
+            int width = area.getSizeX();
+            int[] values = evaluate(area, this)[0];
+            for (int z = 0; z < area.getSizeY(); z++) {
+                System.arraycopy(values, z * width, dest, offset + z * stride, width);
+            }
+        }
+    }
+
+    /**
+     * Keeps one buffer per node and remembers which nodes have already been computed for the current tile
+     */
+    static final class Evaluation {
+
+        private final Map<Node, int[]> buffers = new IdentityHashMap<>();
+        private final Map<Node, Rectanglei> computed = new IdentityHashMap<>();
+        private Rectanglei tile;
+
+        void begin(Rectanglei newTile) {
+            this.tile = newTile;
+        }
+
+        /**
+         * @param node the node
+         * @return the values of the node for the current tile - do not modify
+         */
+        int[] get(Node node) {
+            int size = tile.getSizeX() * tile.getSizeY();
+            int[] buffer = buffers.get(node);
+            if (buffer != null && computed.get(node) == tile) {
+                return buffer;
+            }
+            if (buffer == null || buffer.length < size) {
+                buffer = new int[size];
+                buffers.put(node, buffer);
+            }
+            node.compute(tile, this, buffer);
+            computed.put(node, tile);
+            return buffer;
+        }
+    }
+
+    private abstract static class UnaryNode extends Node {
+        private final Node input;
+
+        UnaryNode(Node input) {
+            this.input = input;
+        }
+
+        abstract int map(int height);
+
+        @Override
+        public int apply(int x, int z) {
+            return map(input.apply(x, z));
+        }
+
+        @Override
+        void compute(Rectanglei area, Evaluation eval, int[] dest) {
+            int[] values = eval.get(input);
+            int size = area.getSizeX() * area.getSizeY();
+            for (int i = 0; i < size; i++) {
+                dest[i] = map(values[i]);
+            }
+        }
+    }
+
+    private abstract static class BinaryNode extends Node {
+        private final Node a;
+        private final Node b;
+
+        BinaryNode(Node a, Node b) {
+            this.a = a;
+            this.b = b;
+        }
+
+        abstract int combine(int ha, int hb);
+
+        @Override
+        public int apply(int x, int z) {
+            return combine(a.apply(x, z), b.apply(x, z));
+        }
+
+        @Override
+        void compute(Rectanglei area, Evaluation eval, int[] dest) {
+            int[] va = eval.get(a);
+            int[] vb = eval.get(b);
+            int size = area.getSizeX() * area.getSizeY();
+            for (int i = 0; i < size; i++) {
+                dest[i] = combine(va[i], vb[i]);
+            }
+        }
+    }
+
+    private static final class SpatialNode extends Node {
+        private final HeightMap mapped;
+
+        SpatialNode(HeightMap mapped) {
+            this.mapped = mapped;
+        }
+
+        @Override
+        public int apply(int x, int z) {
+            return mapped.apply(x, z);
+        }
+
+        @Override
+        void compute(Rectanglei area, Evaluation eval, int[] dest) {
+            mapped.fill(area, dest, 0, area.getSizeX());
+        }
+    }
+}
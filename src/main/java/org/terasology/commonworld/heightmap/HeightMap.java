@@ -4,17 +4,24 @@
 package org.terasology.commonworld.heightmap;
 
 import org.joml.Vector2ic;
+import org.terasology.joml.geom.Rectanglei;
 
 import java.util.function.Function;
+import java.util.function.IntBinaryOperator;
 
 /**
- * Definition of a height map
+ * Definition of a height map. All accessors work on primitive values - use {@link #asFunction()}
+ * only where a boxing {@link Function} is explicitly required.
  */
-public interface HeightMap extends Function<Vector2ic, Integer> {
+@FunctionalInterface
+public interface HeightMap extends IntBinaryOperator {
 
-    @Override
-    default Integer apply(Vector2ic input) {
-        return Integer.valueOf(apply(input.x(), input.y()));
+    /**
+     * @param pos the world position (the y component is the z world coord)
+     * @return the height
+     */
+    default int apply(Vector2ic pos) {
+        return apply(pos.x(), pos.y());
     }
 
     /**
@@ -23,4 +30,35 @@ public interface HeightMap extends Function<Vector2ic, Integer> {
      * @return the height
      */
     int apply(int x, int z);
+
+    @Override
+    default int applyAsInt(int x, int z) {
+        return apply(x, z);
+    }
+
+    /**
+     * Note that the returned function boxes every value.
+     * @return a view on this height map as a {@link Function}
+     */
+    default Function<Vector2ic, Integer> asFunction() {
+        return pos -> apply(pos.x(), pos.y());
+    }
+
+    /**
+     * Computes the heights for all positions in an area. The height at (x, z) is written to
+     * <code>dest[offset + (z - area.minY()) * stride + (x - area.minX())]</code>.
+     * Implementations should override this if they can do better than calling {@link #apply(int, int)} per cell.
+     * @param area the area to compute (the y axis of the rectangle is the z world coord)
+     * @param dest the target array
+     * @param offset the array index of the first cell
+     * @param stride the distance between two rows in the array
+     */
+    default void fill(Rectanglei area, int[] dest, int offset, int stride) {
+        for (int z = 0; z < area.getSizeY(); z++) {
+            int idx = offset + z * stride;
+            for (int x = 0; x < area.getSizeX(); x++) {
+                dest[idx + x] = apply(area.minX() + x, area.minY() + z);
+            }
+        }
+    }
 }
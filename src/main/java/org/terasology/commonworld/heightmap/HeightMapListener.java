@@ -0,0 +1,18 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.commonworld.heightmap;
+
+import org.terasology.joml.geom.Rectanglei;
+
+/**
+ * Receives notifications about height values that have changed
+ */
+@FunctionalInterface
+public interface HeightMapListener {
+
+    /**
+     * @param area the area that contains all changed values (in world coordinates)
+     */
+    void onHeightChanged(Rectanglei area);
+}
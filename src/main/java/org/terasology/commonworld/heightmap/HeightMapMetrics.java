@@ -0,0 +1,71 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.commonworld.heightmap;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A registry of the counters of all height map layers that were created through
+ * {@link HeightMaps#instrumented(HeightMap, String)}. It can be polled or exported periodically.
+ * Layers are removed automatically once they have been garbage collected, so their names can be reused.
+ */
+public final class HeightMapMetrics {
+
+    private static final ConcurrentMap<String, HeightMapStats> REGISTRY = new ConcurrentHashMap<>();
+
+    private HeightMapMetrics() {
+        // avoid instantiation
+    }
+
+    /**
+     * @param name the name of the layer
+     * @param stats the counters of the layer
+     * @throws IllegalArgumentException if a layer of that name is still in use
+     */
+    static void register(String name, HeightMapStats stats) {
+        removeReleased();
+        HeightMapStats previous = REGISTRY.putIfAbsent(name, stats);
+        Preconditions.checkArgument(previous == null, "A height map layer named '%s' is already registered", name);
+    }
+
+    private static void removeReleased() {
+        REGISTRY.values().removeIf(HeightMapStats::isReleased);
+    }
+
+    /**
+     * @param name the name of the layer
+     * @return the counters of the layer or <code>null</code> if no such layer is registered
+     */
+    public static HeightMapStats get(String name) {
+        return REGISTRY.get(name);
+    }
+
+    /**
+     * @return an unmodifiable snapshot of all registered layers, sorted by name
+     */
+    public static Map<String, HeightMapStats> getAll() {
+        removeReleased();
+        return Collections.unmodifiableMap(new TreeMap<>(REGISTRY));
+    }
+
+    /**
+     * @param name the name of the layer to remove
+     */
+    public static void unregister(String name) {
+        REGISTRY.remove(name);
+    }
+
+    /**
+     * Resets the counters of all registered layers
+     */
+    public static void resetAll() {
+        REGISTRY.values().forEach(HeightMapStats::reset);
+    }
+}
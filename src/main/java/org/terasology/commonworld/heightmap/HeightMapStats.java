@@ -0,0 +1,159 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.commonworld.heightmap;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of a single height map layer. Calls and fills are recorded by {@link HeightMaps#instrumented}.
+ * If the layer is a cache, it also records hits, misses and fallbacks and reports the number of bytes it holds.
+ * All cache counters count height values: a hit is a value that is served from the cache, a miss is a value
+ * whose tile has to be computed first and a fallback is a value outside the cached area that is taken
+ * from the underlying height map. All counters can be updated concurrently.
+ * The counters refer to their layer only weakly, so they don't keep it in memory.
+ */
+public final class HeightMapStats {
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder callNanos = new LongAdder();
+    private final LongAdder fills = new LongAdder();
+    private final LongAdder fillNanos = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+    private final WeakReference<HeightMap> layer;
+
+    /**
+     * @param layer the height map whose values are counted
+     */
+    HeightMapStats(HeightMap layer) {
+        this.layer = new WeakReference<>(layer);
+    }
+
+    void recordCall(long nanos) {
+        calls.increment();
+        callNanos.add(nanos);
+    }
+
+    void recordFill(long nanos) {
+        fills.increment();
+        fillNanos.add(nanos);
+    }
+
+    void recordHit() {
+        hits.increment();
+    }
+
+    void recordHits(long count) {
+        hits.add(count);
+    }
+
+    void recordMisses(long count) {
+        misses.add(count);
+    }
+
+    void recordFallback() {
+        fallbacks.increment();
+    }
+
+    void recordFallbacks(long count) {
+        fallbacks.add(count);
+    }
+
+    /**
+     * @return true if the layer has been garbage collected
+     */
+    boolean isReleased() {
+        return layer.get() == null;
+    }
+
+    /**
+     * @return the number of calls to {@link HeightMap#apply(int, int)}
+     */
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    /**
+     * @return the total time spent in {@link HeightMap#apply(int, int)} in nanoseconds
+     */
+    public long getCallNanos() {
+        return callNanos.sum();
+    }
+
+    /**
+     * @return the number of calls to {@link HeightMap#fill}
+     */
+    public long getFills() {
+        return fills.sum();
+    }
+
+    /**
+     * @return the total time spent in {@link HeightMap#fill} in nanoseconds
+     */
+    public long getFillNanos() {
+        return fillNanos.sum();
+    }
+
+    /**
+     * @return the number of values that were served from the cache
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of values whose tile had to be computed on access
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of values outside the cached area that were taken from the underlying height map
+     */
+    public long getFallbacks() {
+        return fallbacks.sum();
+    }
+
+    /**
+     * @return the approximate number of bytes that are currently held by the cache
+     *     (0 for other layers and for caches that have been garbage collected)
+     */
+    public long getBytes() {
+        HeightMap hm = layer.get();
+        return (hm instanceof MeasuredHeightMap) ? ((MeasuredHeightMap) hm).getSizeInBytes() : 0;
+    }
+
+    /**
+     * @return the fraction of the values read from the cache that were hits or NaN if there were none
+     */
+    public double getHitRatio() {
+        long h = hits.sum();
+        long total = h + misses.sum() + fallbacks.sum();
+        return (total == 0) ? Double.NaN : (double) h / total;
+    }
+
+    /**
+     * Sets all counters to zero. The number of held bytes is kept.
+     */
+    public void reset() {
+        calls.reset();
+        callNanos.reset();
+        fills.reset();
+        fillNanos.reset();
+        hits.reset();
+        misses.reset();
+        fallbacks.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "HeightMapStats [calls=" + getCalls() + ", callNanos=" + getCallNanos()
+                + ", fills=" + getFills() + ", fillNanos=" + getFillNanos()
+                + ", hits=" + getHits() + ", misses=" + getMisses() + ", fallbacks=" + getFallbacks()
+                + ", bytes=" + getBytes() + "]";
+    }
+}
@@ -4,11 +4,22 @@
 package org.terasology.commonworld.heightmap;
 
 import com.google.common.math.IntMath;
+import org.joml.Vector2i;
+import org.joml.Vector2ic;
 import org.terasology.commonworld.array.IntArray2D;
 import org.terasology.commonworld.symmetry.Symmetry;
 import org.terasology.joml.geom.Rectanglei;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.function.IntBinaryOperator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Provides access to different height maps
@@ -33,6 +44,216 @@ public final class HeightMaps {
         }
     }
 
+    /**
+     * Creates a cache that samples the height map on a lattice with the given spacing and
+     * reconstructs the values in between with Catmull-Rom splines. The result is smooth across lattice
+     * lines, so much larger scales can be used than with {@link #caching(HeightMap, Rectanglei, int)}.
+     * @param hm the height to use
+     * @param area the area to cache
+     * @param scale the lattice spacing
+     * @return a height map that interpolates cached lattice values bi-cubically
+     */
+    public static HeightMap cachingCubic(HeightMap hm, Rectanglei area, int scale) {
+        return new CachingCubicHeightMap(area, hm, scale);
+    }
+
+    /**
+     * Creates a cache like {@link #caching(HeightMap, Rectanglei, int)} with the largest lattice spacing
+     * that keeps the interpolation error within the given bound (see {@link NoiseHeightMap#getSampleSpacing(int)}).
+     * @param hm the noise height map to use
+     * @param area the area to cache
+     * @param maxDeviation the maximum accepted deviation in blocks
+     * @return a height map that interpolates between cached lattice values
+     */
+    public static HeightMap sampled(NoiseHeightMap hm, Rectanglei area, int maxDeviation) {
+        return caching(hm, area, hm.getSampleSpacing(maxDeviation));
+    }
+
+    /**
+     * Creates a cache that adapts its sampling resolution to the terrain. It starts with a lattice of
+     * the given cell size and refines cells in a quadtree wherever bi-linear interpolation deviates
+     * from the height map by more than the tolerance at one of the probe points of a cell: the lattice
+     * points of the next finer level. Cells that cannot be represented more compactly than by their
+     * plain heights are stored as such. Flat regions are evaluated at a few lattice points only.
+     * @param hm the height to use
+     * @param area the area to cache
+     * @param maxCellSize the edge length of the coarsest cells (must be a power of two)
+     * @param tolerance the maximum deviation in blocks - it is guaranteed at the probe points and for
+     *     cells of at most two blocks, but features between the probes of larger cells may exceed it
+     * @return a height map that interpolates cached values from an adaptive lattice
+     */
+    public static HeightMap adaptiveCaching(HeightMap hm, Rectanglei area, int maxCellSize, int tolerance) {
+        return new AdaptiveCachingHeightMap(area, hm, maxCellSize, tolerance);
+    }
+
+    /**
+     * Computes a cache like {@link #caching(HeightMap, Rectanglei, int)}, but splits the work into bands
+     * of rows that are processed by the given executor. The result is identical to the sequential version.
+     * @param hm the height map to use - it must support concurrent access
+     * @param area the area to cache
+     * @param scale the scale level (should be a divisor of area.width and area.height)
+     * @param executor the executor that computes the row bands
+     * @return a future that completes with the cached height map once all rows have been computed
+     */
+    public static CompletableFuture<HeightMap> cachingAsync(HeightMap hm, Rectanglei area, int scale, Executor executor) {
+        if (scale == 1) {
+            return CachingHeightMap.createAsync(area, hm, executor);
+        } else {
+            return CachingLerpHeightMap.createAsync(area, hm, scale, executor);
+        }
+    }
+
+    /**
+     * Computes a cache like {@link #caching(HeightMap, Rectanglei, int)} in parallel in the common
+     * {@link ForkJoinPool} and waits for the result.
+     * @param hm the height map to use - it must support concurrent access
+     * @param area the area to cache
+     * @param scale the scale level (should be a divisor of area.width and area.height)
+     * @return the cached height map
+     */
+    public static HeightMap cachingParallel(HeightMap hm, Rectanglei area, int scale) {
+        return cachingAsync(hm, area, scale, ForkJoinPool.commonPool()).join();
+    }
+
+    /**
+     * Creates a cache like {@link #caching(HeightMap, Rectanglei, int)} that is backed by a memory-mapped file.
+     * If the file was created with the same area, scale and seed before, its content is used
+     * without recomputation. Otherwise, it is (re-)computed and written to the file.
+     * The heights are stored outside of the Java heap and loaded on demand.
+     * @param hm the height map to use
+     * @param area the area to cache
+     * @param scale the scale level (should be a divisor of area.width and area.height)
+     * @param file the cache file
+     * @param seed the seed that identifies the content of the height map
+     * @return a file-backed caching height map
+     * @throws IOException if the file cannot be read or written
+     */
+    public static HeightMap persistentCaching(HeightMap hm, Rectanglei area, int scale, Path file, long seed)
+            throws IOException {
+        return new MappedCachingHeightMap(file, area, hm, scale, seed);
+    }
+
+    /**
+     * Creates a cache of the given area together with a min/max mip chain that answers
+     * range queries for the lowest or highest point of a rectangle.
+     * @param hm the height map to use
+     * @param area the area to cache
+     * @return a height map that supports range queries within the area
+     */
+    public static HeightPyramid pyramid(HeightMap hm, Rectanglei area) {
+        return new HeightPyramid(hm, area);
+    }
+
+    /**
+     * Creates an integral image of the heights and squared heights in the given area that provides
+     * sum, mean and variance of rectangles in constant time.
+     * @param hm the height map to use
+     * @param area the area to cover
+     * @return the summed-area table of the area
+     */
+    public static SummedAreaTable summedAreaTable(HeightMap hm, Rectanglei area) {
+        return SummedAreaTable.create(hm, area);
+    }
+
+    /**
+     * Computes a table like {@link #summedAreaTable(HeightMap, Rectanglei)} in bands of rows and columns
+     * that are processed by the given executor. The result is identical to the sequential version.
+     * @param hm the height map to use - it must support concurrent access
+     * @param area the area to cover
+     * @param executor the executor that computes the bands
+     * @return a future that completes with the summed-area table
+     */
+    public static CompletableFuture<SummedAreaTable> summedAreaTableAsync(HeightMap hm, Rectanglei area, Executor executor) {
+        return SummedAreaTable.createAsync(hm, area, executor);
+    }
+
+    /**
+     * @param hm the height map - it must support concurrent access if the spliterator is split
+     * @param area the region to traverse
+     * @return a spliterator over all cells of the region in row-major order
+     */
+    public static RegionSpliterator spliterator(HeightMap hm, Rectanglei area) {
+        return new RegionSpliterator(hm, area);
+    }
+
+    /**
+     * @param hm the height map - it must support concurrent access if the stream is parallel
+     * @param area the region to traverse
+     * @param parallel true to create a parallel stream
+     * @return a stream of all cells of the region
+     */
+    public static Stream<HeightCell> stream(HeightMap hm, Rectanglei area, boolean parallel) {
+        return StreamSupport.stream(new RegionSpliterator(hm, area), parallel);
+    }
+
+    /**
+     * Creates a cache that computes square tiles of the underlying height map on first access.
+     * At most <code>maxTiles * tileSize * tileSize</code> heights are kept in memory;
+     * the least recently used tile is evicted first. The returned instance is not thread-safe.
+     * @param hm the height map to cache
+     * @param tileSize the edge length of a tile
+     * @param maxTiles the maximum number of tiles to keep in memory
+     * @return a lazily computed, unbounded caching height map
+     */
+    public static HeightMap tiledCache(HeightMap hm, int tileSize, int maxTiles) {
+        return new TiledCachingHeightMap(hm, tileSize, maxTiles);
+    }
+
+    /**
+     * Creates a thread-safe variant of {@link #tiledCache(HeightMap, int, int)} that can be shared by
+     * several generator threads. Each tile is computed only once, even if it is requested by multiple
+     * threads at the same time. The given height map must support concurrent access.
+     * @param hm the (thread-safe) height map to cache
+     * @param tileSize the edge length of a tile
+     * @param maxTiles the maximum number of tiles to keep in memory
+     * @return a lazily computed, unbounded caching height map that can be accessed concurrently
+     */
+    public static HeightMap concurrentTiledCache(HeightMap hm, int tileSize, int maxTiles) {
+        int concurrency = Runtime.getRuntime().availableProcessors();
+        return new ConcurrentTiledCachingHeightMap(hm, tileSize, maxTiles, concurrency);
+    }
+
+    /**
+     * Measures the number and the duration of all calls to the given height map and registers the
+     * counters in {@link HeightMapMetrics} under the given name. The registration ends when the height
+     * map is garbage collected or {@link HeightMapMetrics#unregister(String)} is called.
+     * If the height map is one of the caches, it starts counting hits, misses and fallbacks, which are
+     * reported under the same name together with its memory usage. Caches that are not instrumented
+     * don't count anything.
+     * @param hm the height map to measure
+     * @param name the name of the layer
+     * @return a height map that returns the same values as the given one
+     * @throws IllegalArgumentException if a layer of that name is still registered
+     */
+    public static HeightMap instrumented(HeightMap hm, String name) {
+        HeightMapStats stats = new HeightMapStats(hm);
+        HeightMapMetrics.register(name, stats);
+        if (hm instanceof MeasuredHeightMap) {
+            ((MeasuredHeightMap) hm).setStats(stats);
+        }
+        return new InstrumentedHeightMap(hm, stats);
+    }
+
+    /**
+     * @param op the operator that maps (x, z) to a height
+     * @return the operator itself if it is a height map already, a thin adapter otherwise
+     */
+    public static HeightMap fromOperator(IntBinaryOperator op) {
+        if (op instanceof HeightMap) {
+            return (HeightMap) op;
+        }
+        return op::applyAsInt;
+    }
+
+    /**
+     * Adapts legacy code that provides heights as boxed values. Prefer {@link #fromOperator(IntBinaryOperator)}.
+     * @param func the function that maps (x, z) to a height
+     * @return a height map that delegates to the given function
+     */
+    public static HeightMap fromFunction(Function<? super Vector2ic, Integer> func) {
+        return (x, z) -> func.apply(new Vector2i(x, z));
+    }
+
     /**
      * @param height the height to use
      * @return An height map based on the given constant value
@@ -42,42 +263,67 @@ public final class HeightMaps {
     }
 
     /**
+     * Nested offsets and height scales are folded into a single node; constants are evaluated directly.
      * @param hm the backing height map
      * @param offset the height offset to use
      * @return An height map that returns all values with +offset
      */
     public static HeightMap offset(HeightMap hm, int offset) {
-        return new OffsetHeightMap(hm, offset);
+        return affine(hm, 1, offset);
     }
 
     /**
+     * Nested area scales are folded into a single node; height scales and offsets are moved
+     * on top so that they can be folded with outer ones.
      * @param hm the backing height map
      * @param scale the scale factor to use
      * @return An height map that returns values at (x * scale, z * scale)
      */
     public static HeightMap scalingArea(final HeightMap hm, final int scale) {
-        return new HeightMap() {
-
-            @Override
-            public int apply(int x, int z) {
-                return hm.apply(x * scale, z * scale);
-            }
-        };
+        if (scale == 1 || hm instanceof ConstantHeightMap) {
+            return hm;
+        }
+        if (hm instanceof AffineHeightMap) {
+            AffineHeightMap affine = (AffineHeightMap) hm;
+            return affine(scalingArea(affine.getBase(), scale), affine.getScale(), affine.getOffset());
+        }
+        if (hm instanceof ScalingAreaHeightMap) {
+            ScalingAreaHeightMap inner = (ScalingAreaHeightMap) hm;
+            return scalingArea(inner.getBase(), inner.getScale() * scale);
+        }
+        return new ScalingAreaHeightMap(hm, scale);
     }
 
     /**
+     * Nested offsets and height scales are folded into a single node; constants are evaluated directly.
      * @param hm the backing height map
      * @param scale the scale factor to use
      * @return An height map that returns y * scale
      */
     public static HeightMap scalingHeight(final HeightMap hm, final int scale) {
-        return new HeightMap() {
+        return affine(hm, scale, 0);
+    }
 
-            @Override
-            public int apply(int x, int z) {
-                return hm.apply(x, z) * scale;
-            }
-        };
+    /**
+     * Creates (hm * scale + offset) and folds it with the given height map where possible.
+     * This is exact, because int arithmetic wraps around consistently.
+     */
+    private static HeightMap affine(HeightMap hm, int scale, int offset) {
+        if (scale == 0) {
+            return constant(offset);
+        }
+        if (hm instanceof ConstantHeightMap) {
+            return constant(((ConstantHeightMap) hm).getHeight() * scale + offset);
+        }
+        if (hm instanceof AffineHeightMap) {
+            AffineHeightMap inner = (AffineHeightMap) hm;
+            // (h * s1 + o1) * s2 + o2 = h * (s1 * s2) + (o1 * s2 + o2)
+            return affine(inner.getBase(), inner.getScale() * scale, inner.getOffset() * scale + offset);
+        }
+        if (scale == 1 && offset == 0) {
+            return hm;
+        }
+        return new AffineHeightMap(hm, scale, offset);
     }
 
     /**
@@ -94,17 +340,22 @@ public final class HeightMaps {
      * @return a symmetric height map
      */
     public static HeightMap symmetric(final HeightMap hm, final Symmetry sym) {
-        return new HeightMap() {
-            @Override
-            public int apply(int x, int z) {
-                if (sym.isMirrored(x, z)) {
-                    return hm.apply(sym.getMirrored(x, z));
-                } else {
-                    return hm.apply(x, z);
-                }
-            }
+        if (hm instanceof ConstantHeightMap) {
+            return hm;
+        }
+        return new SymmetricHeightMap(hm, sym);
+    }
 
-        };
+    /**
+     * Creates a cache like {@link #caching(HeightMap, Rectanglei, int)} for the symmetric version of
+     * the given height map. Only the non-mirrored cells are computed and stored.
+     * @param hm the height map (not symmetric) that provides the non-mirrored part
+     * @param area the area to cache
+     * @param sym the symmetry
+     * @return a symmetric height map that caches the given area
+     */
+    public static HeightMap symmetricCaching(HeightMap hm, Rectanglei area, Symmetry sym) {
+        return new SymmetricCachingHeightMap(area, hm, sym);
     }
 
     /**
@@ -120,6 +371,22 @@ public final class HeightMaps {
                 int lz = IntMath.mod(z, array.getHeight());
                 return array.get(lx, lz);
             }
+
+            @Override
+            public void fill(Rectanglei area, int[] dest, int offset, int stride) {
+                int width = array.getWidth();
+                for (int z = 0; z < area.getSizeY(); z++) {
+                    int idx = offset + z * stride;
+                    int lz = IntMath.mod(area.minY() + z, array.getHeight());
+                    int lx = IntMath.mod(area.minX(), width);
+                    for (int x = 0; x < area.getSizeX(); x++) {
+                        dest[idx + x] = array.get(lx, lz);
+                        if (++lx == width) {
+                            lx = 0;
+                        }
+                    }
+                }
+            }
         };
     }
 }
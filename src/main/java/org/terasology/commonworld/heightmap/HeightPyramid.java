@@ -0,0 +1,287 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.commonworld.heightmap;
+
+import com.google.common.base.Preconditions;
+import org.terasology.joml.geom.Rectanglei;
+
+/**
+ * A cache of a rectangular area together with a chain of min/max mip levels. Level 0 contains the heights,
+ * every cell of level n + 1 holds the minimum and maximum of (up to) 2x2 cells of level n.
+ * The last level consists of a single cell. Range queries descend from the top and only refine
+ * nodes that intersect the query's border. Level l contributes about (edge length / 2^l) of these
+ * nodes, so an exact query visits O(perimeter) nodes in the worst case, not O(log n).
+ * Nodes that cannot improve on the best value found so far are skipped, which usually prunes most of them.
+ * {@link #maxBound} and {@link #minBound} answer in constant time, but only return bounds.
+ */
+public final class HeightPyramid implements MeasuredHeightMap {
+
+    private final Rectanglei area;
+    private final HeightMap hm;
+    private final int[][] mins;
+    private final int[][] maxs;
+    private final int[] widths;
+    private final int[] heights;
+
+    private volatile HeightMapStats stats;
+
+    /**
+     * @param hm the height map to use
+     * @param area the area to cache
+     */
+    HeightPyramid(HeightMap hm, Rectanglei area) {
+        Preconditions.checkArgument(area.getSizeX() > 0 && area.getSizeY() > 0, "area must not be empty");
+
+        this.area = area;
+        this.hm = hm;
+
+        int levels = 1;
+        while ((1 << (levels - 1)) < Math.max(area.getSizeX(), area.getSizeY())) {
+            levels++;
+        }
+
+        mins = new int[levels][];
+        maxs = new int[levels][];
+        widths = new int[levels];
+        heights = new int[levels];
+
+        widths[0] = area.getSizeX();
+        heights[0] = area.getSizeY();
+        int[] base = new int[widths[0] * heights[0]];
+        hm.fill(area, base, 0, widths[0]);
+        mins[0] = base;
+        maxs[0] = base;
+
+        for (int level = 1; level < levels; level++) {
+            buildLevel(level);
+        }
+    }
+
+    private void buildLevel(int level) {
+        int pw = widths[level - 1];
+        int ph = heights[level - 1];
+        int w = (pw + 1) / 2;
+        int h = (ph + 1) / 2;
+        int[] pmin = mins[level - 1];
+        int[] pmax = maxs[level - 1];
+        int[] min = new int[w * h];
+        int[] max = new int[w * h];
+
+        for (int z = 0; z < h; z++) {
+            int z0 = 2 * z;
+            int z1 = Math.min(z0 + 1, ph - 1);
+            for (int x = 0; x < w; x++) {
+                int x0 = 2 * x;
+                int x1 = Math.min(x0 + 1, pw - 1);
+                int i00 = z0 * pw + x0;
+                int i10 = z0 * pw + x1;
+                int i01 = z1 * pw + x0;
+                int i11 = z1 * pw + x1;
+                min[z * w + x] = Math.min(Math.min(pmin[i00], pmin[i10]), Math.min(pmin[i01], pmin[i11]));
+                max[z * w + x] = Math.max(Math.max(pmax[i00], pmax[i10]), Math.max(pmax[i01], pmax[i11]));
+            }
+        }
+
+        widths[level] = w;
+        heights[level] = h;
+        mins[level] = min;
+        maxs[level] = max;
+    }
+
+    /**
+     * @return the cached area
+     */
+    public Rectanglei getArea() {
+        return area;
+    }
+
+    /**
+     * @return the number of levels, including level 0 (the heights)
+     */
+    public int getLevelCount() {
+        return mins.length;
+    }
+
+    /**
+     * @param level the level
+     * @return the number of cells per row in the given level
+     */
+    public int getLevelWidth(int level) {
+        return widths[level];
+    }
+
+    /**
+     * @param level the level
+     * @return the number of rows in the given level
+     */
+    public int getLevelHeight(int level) {
+        return heights[level];
+    }
+
+    /**
+     * @param level the level - each cell covers (1 &lt;&lt; level) blocks in both directions
+     * @param cx the cell x coord, relative to the area origin
+     * @param cz the cell z coord, relative to the area origin
+     * @return the minimum height in the cell
+     */
+    public int getMin(int level, int cx, int cz) {
+        return mins[level][cz * widths[level] + cx];
+    }
+
+    /**
+     * @param level the level - each cell covers (1 &lt;&lt; level) blocks in both directions
+     * @param cx the cell x coord, relative to the area origin
+     * @param cz the cell z coord, relative to the area origin
+     * @return the maximum height in the cell
+     */
+    public int getMax(int level, int cx, int cz) {
+        return maxs[level][cz * widths[level] + cx];
+    }
+
+    /**
+     * @param query the query area - it must be inside the cached area
+     * @return the exact maximum height in the query area
+     */
+    public int maxIn(Rectanglei query) {
+        checkQuery(query);
+        int x0 = query.minX() - area.minX();
+        int z0 = query.minY() - area.minY();
+        int x1 = x0 + query.getSizeX();
+        int z1 = z0 + query.getSizeY();
+        return descend(mins.length - 1, 0, 0, x0, z0, x1, z1, Integer.MIN_VALUE, true);
+    }
+
+    /**
+     * @param query the query area - it must be inside the cached area
+     * @return the exact minimum height in the query area
+     */
+    public int minIn(Rectanglei query) {
+        checkQuery(query);
+        int x0 = query.minX() - area.minX();
+        int z0 = query.minY() - area.minY();
+        int x1 = x0 + query.getSizeX();
+        int z1 = z0 + query.getSizeY();
+        return descend(mins.length - 1, 0, 0, x0, z0, x1, z1, Integer.MAX_VALUE, false);
+    }
+
+    /**
+     * Returns an upper bound for the maximum height in constant time. It combines at most 2x2 cells
+     * of the first level whose cells are at least as large as the query.
+     * @param query the query area - it must be inside the cached area
+     * @return a value that is equal to or larger than the maximum height in the query area
+     */
+    public int maxBound(Rectanglei query) {
+        return bound(query, true);
+    }
+
+    /**
+     * Returns a lower bound for the minimum height in constant time. It combines at most 2x2 cells
+     * of the first level whose cells are at least as large as the query.
+     * @param query the query area - it must be inside the cached area
+     * @return a value that is equal to or smaller than the minimum height in the query area
+     */
+    public int minBound(Rectanglei query) {
+        return bound(query, false);
+    }
+
+    @Override
+    public void setStats(HeightMapStats stats) {
+        this.stats = stats;
+    }
+
+    @Override
+    public long getSizeInBytes() {
+        // level 0 is shared by mins and maxs
+        long ints = mins[0].length;
+        for (int level = 1; level < mins.length; level++) {
+            ints += 2L * mins[level].length;
+        }
+        return ints * Integer.BYTES;
+    }
+
+    @Override
+    public int apply(int x, int z) {
+        boolean xOk = x >= area.minX() && x < area.minX() + area.getSizeX();
+        boolean zOk = z >= area.minY() && z < area.minY() + area.getSizeY();
+
+        if (xOk && zOk) {
+            HeightMapStats counters = stats;
+            if (counters != null) {
+                counters.recordHit();
+            }
+            return mins[0][(z - area.minY()) * widths[0] + (x - area.minX())];
+        }
+
+        HeightMapStats counters = stats;
+        if (counters != null) {
+            counters.recordFallback();
+        }
+
+        return hm.apply(x, z);
+    }
+
+    private int bound(Rectanglei query, boolean findMax) {
+        checkQuery(query);
+        int size = Math.max(query.getSizeX(), query.getSizeY());
+        int level = Math.min(32 - Integer.numberOfLeadingZeros(size - 1), mins.length - 1);
+
+        int cx0 = (query.minX() - area.minX()) >> level;
+        int cz0 = (query.minY() - area.minY()) >> level;
+        int cx1 = (query.minX() + query.getSizeX() - 1 - area.minX()) >> level;
+        int cz1 = (query.minY() + query.getSizeY() - 1 - area.minY()) >> level;
+
+        int[] values = findMax ? maxs[level] : mins[level];
+        int w = widths[level];
+        int best = values[cz0 * w + cx0];
+        for (int cz = cz0; cz <= cz1; cz++) {
+            for (int cx = cx0; cx <= cx1; cx++) {
+                int v = values[cz * w + cx];
+                best = findMax ? Math.max(best, v) : Math.min(best, v);
+            }
+        }
+        return best;
+    }
+
+    private int descend(int level, int cx, int cz, int x0, int z0, int x1, int z1, int best, boolean findMax) {
+        int v = findMax ? maxs[level][cz * widths[level] + cx] : mins[level][cz * widths[level] + cx];
+        if (findMax ? v <= best : v >= best) {
+            return best;
+        }
+
+        int nx0 = cx << level;
+        int nz0 = cz << level;
+        int nx1 = Math.min(nx0 + (1 << level), widths[0]);
+        int nz1 = Math.min(nz0 + (1 << level), heights[0]);
+        if (nx0 >= x0 && nx1 <= x1 && nz0 >= z0 && nz1 <= z1) {
+            return v;
+        }
+
+        // the node intersects the query, but is not fully covered -> it cannot be on level 0
+        int result = best;
+        int child = level - 1;
+        int half = 1 << child;
+        for (int ccz = 2 * cz; ccz <= 2 * cz + 1 && ccz < heights[child]; ccz++) {
+            int cz0 = ccz * half;
+            if (cz0 >= z1 || cz0 + half <= z0) {
+                continue;
+            }
+            for (int ccx = 2 * cx; ccx <= 2 * cx + 1 && ccx < widths[child]; ccx++) {
+                int cx0 = ccx * half;
+                if (cx0 >= x1 || cx0 + half <= x0) {
+                    continue;
+                }
+                result = descend(child, ccx, ccz, x0, z0, x1, z1, result, findMax);
+            }
+        }
+        return result;
+    }
+
+    private void checkQuery(Rectanglei query) {
+        Preconditions.checkArgument(query.getSizeX() > 0 && query.getSizeY() > 0, "query must not be empty");
+        Preconditions.checkArgument(query.minX() >= area.minX() && query.minY() >= area.minY()
+                && query.minX() + query.getSizeX() <= area.minX() + area.getSizeX()
+                && query.minY() + query.getSizeY() <= area.minY() + area.getSizeY(),
+                "query %s is not inside the cached area %s", query, area);
+    }
+}
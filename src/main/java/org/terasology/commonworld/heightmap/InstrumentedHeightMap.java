@@ -0,0 +1,44 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.commonworld.heightmap;
+
+import org.terasology.joml.geom.Rectanglei;
+
+/**
+ * Counts the calls to the underlying height map and measures their duration
+ */
+class InstrumentedHeightMap implements HeightMap {
+
+    private final HeightMap hm;
+    private final HeightMapStats stats;
+
+    /**
+     * @param hm the height map to measure
+     * @param stats the counters to update
+     */
+    InstrumentedHeightMap(HeightMap hm, HeightMapStats stats) {
+        this.hm = hm;
+        this.stats = stats;
+    }
+
+    @Override
+    public int apply(int x, int z) {
+        long start = System.nanoTime();
+        try {
+            return hm.apply(x, z);
+        } finally {
+            stats.recordCall(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void fill(Rectanglei area, int[] dest, int offset, int stride) {
+        long start = System.nanoTime();
+        try {
+            hm.fill(area, dest, offset, stride);
+        } finally {
+            stats.recordFill(System.nanoTime() - start);
+        }
+    }
+}
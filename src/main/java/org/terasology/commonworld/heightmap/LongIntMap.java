@@ -0,0 +1,179 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.commonworld.heightmap;
+
+import java.util.Arrays;
+
+/**
+ * A minimal open-addressing hash map from long keys to int values that avoids boxing.
+ * Not thread-safe.
+ */
+class LongIntMap {
+
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private final int missingValue;
+
+    private long[] keys;
+    private int[] values;
+    private boolean[] used;
+    private int size;
+    private int mask;
+
+    /**
+     * @param expectedSize the number of entries that can be stored without rehashing
+     * @param missingValue the value that is returned for unknown keys
+     */
+    LongIntMap(int expectedSize, int missingValue) {
+        this.missingValue = missingValue;
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * @param key the key
+     * @return the value or the missing value if the key is unknown
+     */
+    int get(long key) {
+        int idx = indexOf(key);
+        return used[idx] ? values[idx] : missingValue;
+    }
+
+    /**
+     * @param key the key
+     * @return true if the key is present
+     */
+    boolean containsKey(long key) {
+        return used[indexOf(key)];
+    }
+
+    /**
+     * @param key the key
+     * @param value the value
+     * @return the previous value or the missing value
+     */
+    int put(long key, int value) {
+        int idx = indexOf(key);
+        if (used[idx]) {
+            int prev = values[idx];
+            values[idx] = value;
+            return prev;
+        }
+
+        keys[idx] = key;
+        values[idx] = value;
+        used[idx] = true;
+        size++;
+
+        if (size > keys.length * LOAD_FACTOR) {
+            rehash(keys.length * 2);
+        }
+        return missingValue;
+    }
+
+    /**
+     * @param key the key
+     * @return the removed value or the missing value
+     */
+    int remove(long key) {
+        int idx = indexOf(key);
+        if (!used[idx]) {
+            return missingValue;
+        }
+
+        int prev = values[idx];
+        used[idx] = false;
+        size--;
+
+        // shift back entries of the probe sequence so that no lookup stops at the gap
+        int gap = idx;
+        int cur = (idx + 1) & mask;
+        while (used[cur]) {
+            int home = slot(keys[cur]);
+            if (((cur - home) & mask) >= ((cur - gap) & mask)) {
+                keys[gap] = keys[cur];
+                values[gap] = values[cur];
+                used[gap] = true;
+                used[cur] = false;
+                gap = cur;
+            }
+            cur = (cur + 1) & mask;
+        }
+        return prev;
+    }
+
+    /**
+     * @return the number of entries
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Removes all entries
+     */
+    void clear() {
+        Arrays.fill(used, false);
+        size = 0;
+    }
+
+    /**
+     * @param consumer receives all key/value pairs
+     */
+    void forEach(EntryConsumer consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            if (used[i]) {
+                consumer.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    private int indexOf(long key) {
+        int idx = slot(key);
+        while (used[idx] && keys[idx] != key) {
+            idx = (idx + 1) & mask;
+        }
+        return idx;
+    }
+
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        boolean[] oldUsed = used;
+
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                int idx = indexOf(oldKeys[i]);
+                keys[idx] = oldKeys[i];
+                values[idx] = oldValues[i];
+                used[idx] = true;
+            }
+        }
+    }
+
+    /**
+     * Receives map entries
+     */
+    interface EntryConsumer {
+
+        /**
+         * @param key the key
+         * @param value the value
+         */
+        void accept(long key, int value);
+    }
+}
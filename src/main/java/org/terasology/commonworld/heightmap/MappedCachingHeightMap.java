@@ -0,0 +1,214 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.commonworld.heightmap;
+
+import com.google.common.base.Preconditions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.terasology.joml.geom.Rectanglei;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A cache that stores a rectangular area in a memory-mapped file. The file is reused
+ * without recomputation if its header matches the requested area, scale and seed.
+ * The data lives outside of the Java heap and is paged in by the OS on demand.
+ * A file is never modified once it is complete: new content is computed in a temporary file
+ * that atomically replaces the old one, so other instances that still map it are not affected.
+ */
+class MappedCachingHeightMap implements MeasuredHeightMap {
+
+    private static final Logger logger = LoggerFactory.getLogger(MappedCachingHeightMap.class);
+
+    private static final int MAGIC = 0x43574843;  // "CWHC"
+    private static final int VERSION = 1;
+
+    // magic, version, minX, minY, sizeX, sizeY, scale, complete flag (all int), seed (long)
+    private static final int HEADER_SIZE = 7 * Integer.BYTES + Integer.BYTES + Long.BYTES;
+    private static final int COMPLETE_FLAG_POS = 7 * Integer.BYTES;
+    private static final int SEED_POS = 8 * Integer.BYTES;
+
+    private final IntBuffer height;
+    private final Rectanglei area;
+    private final HeightMap hm;
+
+    private volatile HeightMapStats stats;
+
+    /**
+     * @param file the cache file
+     * @param area the area to cache
+     * @param hm the height map to use
+     * @param scale the scale level
+     * @param seed the seed that was used to create the height map
+     * @throws IOException if the file cannot be read or written
+     */
+    MappedCachingHeightMap(Path file, Rectanglei area, HeightMap hm, int scale, long seed) throws IOException {
+        this.area = area;
+        this.hm = hm;
+
+        long cells = (long) area.getSizeX() * area.getSizeY();
+        long fileSize = HEADER_SIZE + cells * Integer.BYTES;
+        // a single mapping and the int buffer indices are limited to Integer.MAX_VALUE
+        Preconditions.checkArgument(fileSize <= Integer.MAX_VALUE,
+                "area is too large for a mapped cache (%s cells)", cells);
+
+        MappedByteBuffer existing = mapIfValid(file, fileSize, scale, seed);
+        if (existing != null) {
+            logger.debug("Reusing cached height map from {}", file);
+            height = slice(existing);
+        } else {
+            logger.debug("Computing cached height map for {}", file);
+            height = computeAndReplace(file, fileSize, scale, seed);
+        }
+    }
+
+    private MappedByteBuffer mapIfValid(Path file, long fileSize, int scale, long seed) throws IOException {
+        if (!Files.exists(file) || Files.size(file) != fileSize) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // the file may have been replaced in the meantime
+            if (channel.size() != fileSize) {
+                return null;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            return isHeaderValid(buffer, scale, seed) ? buffer : null;
+        }
+    }
+
+    private IntBuffer computeAndReplace(Path file, long fileSize, int scale, long seed) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            IntBuffer result;
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                result = slice(buffer);
+                compute(buffer, result, scale, seed);
+            }
+            // the mapping stays valid after the move, also for instances that map the replaced file
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return result;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static IntBuffer slice(MappedByteBuffer buffer) {
+        buffer.position(HEADER_SIZE);
+        IntBuffer result = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        buffer.position(0);
+        return result;
+    }
+
+    private boolean isHeaderValid(MappedByteBuffer buffer, int scale, long seed) {
+        return buffer.getInt(0) == MAGIC
+                && buffer.getInt(4) == VERSION
+                && buffer.getInt(8) == area.minX()
+                && buffer.getInt(12) == area.minY()
+                && buffer.getInt(16) == area.getSizeX()
+                && buffer.getInt(20) == area.getSizeY()
+                && buffer.getInt(24) == scale
+                && buffer.getInt(COMPLETE_FLAG_POS) == 1
+                && buffer.getLong(SEED_POS) == seed;
+    }
+
+    private void compute(MappedByteBuffer buffer, IntBuffer data, int scale, long seed) {
+        // the file only becomes visible once it is complete, but the flag keeps the format self-describing
+        buffer.putInt(COMPLETE_FLAG_POS, 0);
+
+        HeightMap source = (scale == 1) ? hm : new CachingLerpHeightMap(area, hm, scale);
+        int width = area.getSizeX();
+        int[] row = new int[width];
+        for (int z = 0; z < area.getSizeY(); z++) {
+            Rectanglei rowArea = new Rectanglei(area.minX(), area.minY() + z, area.minX() + width, area.minY() + z + 1);
+            source.fill(rowArea, row, 0, width);
+            data.position(z * width);
+            data.put(row);
+        }
+        data.position(0);
+
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, VERSION);
+        buffer.putInt(8, area.minX());
+        buffer.putInt(12, area.minY());
+        buffer.putInt(16, area.getSizeX());
+        buffer.putInt(20, area.getSizeY());
+        buffer.putInt(24, scale);
+        buffer.putLong(SEED_POS, seed);
+        buffer.force();
+
+        buffer.putInt(COMPLETE_FLAG_POS, 1);
+        buffer.force();
+    }
+
+    @Override
+    public void setStats(HeightMapStats stats) {
+        this.stats = stats;
+    }
+
+    @Override
+    public long getSizeInBytes() {
+        // the data is mapped - it is not part of the Java heap
+        return (long) height.capacity() * Integer.BYTES;
+    }
+
+    @Override
+    public int apply(int x, int z) {
+        boolean xOk = x >= area.minX() && x < area.minX() + area.getSizeX();
+        boolean zOk = z >= area.minY() && z < area.minY() + area.getSizeY();
+
+        if (xOk && zOk) {
+            HeightMapStats counters = stats;
+            if (counters != null) {
+                counters.recordHit();
+            }
+            int lx = x - area.minX();
+            int lz = z - area.minY();
+            return height.get(lz * area.getSizeX() + lx);
+        }
+
+        HeightMapStats counters = stats;
+        if (counters != null) {
+            counters.recordFallback();
+        }
+
+        return hm.apply(x, z);
+    }
+
+    @Override
+    public void fill(Rectanglei target, int[] dest, int offset, int stride) {
+        boolean xOk = target.minX() >= area.minX() && target.minX() + target.getSizeX() <= area.minX() + area.getSizeX();
+        boolean zOk = target.minY() >= area.minY() && target.minY() + target.getSizeY() <= area.minY() + area.getSizeY();
+
+        if (!xOk || !zOk) {
+            MeasuredHeightMap.super.fill(target, dest, offset, stride);
+            return;
+        }
+
+        HeightMapStats counters = stats;
+        if (counters != null) {
+            counters.recordHits((long) target.getSizeX() * target.getSizeY());
+        }
+
+        // work on a private view so that concurrent readers don't share the buffer position
+        IntBuffer view = height.duplicate();
+        int width = area.getSizeX();
+        int src = (target.minY() - area.minY()) * width + (target.minX() - area.minX());
+        for (int z = 0; z < target.getSizeY(); z++) {
+            view.position(src + z * width);
+            view.get(dest, offset + z * stride, target.getSizeX());
+        }
+    }
+}
@@ -0,0 +1,22 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.commonworld.heightmap;
+
+/**
+ * A cache that can count its hits, misses and fallbacks. Counting is disabled
+ * until {@link HeightMaps#instrumented(HeightMap, String)} attaches the counters.
+ */
+interface MeasuredHeightMap extends HeightMap {
+
+    /**
+     * Can be called at any time, also while other threads access the height map
+     * @param stats the counters to update from now on
+     */
+    void setStats(HeightMapStats stats);
+
+    /**
+     * @return the approximate number of bytes that are held by the cache
+     */
+    long getSizeInBytes();
+}
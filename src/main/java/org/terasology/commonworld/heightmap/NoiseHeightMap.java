@@ -16,42 +16,190 @@
 
 package org.terasology.commonworld.heightmap;
 
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.Maps;
 import org.terasology.engine.utilities.procedural.BrownianNoise;
 import org.terasology.engine.utilities.procedural.Noise;
 import org.terasology.engine.utilities.procedural.SimplexNoise;
+import org.terasology.joml.geom.Rectanglei;
+
+import java.util.Map;
+import java.util.Random;
 
 /**
- * A simple implementation based on {@link SimplexNoise}
+ * A simple implementation based on {@link SimplexNoise}. Instances are thread-safe.
+ * The noise tables are shared among all instances with the same seed. They are released
+ * once no instance uses the seed anymore.
  */
-public class NoiseHeightMap implements HeightMap {
+public class NoiseHeightMap implements StridedHeightMap {
+
+    private static final LoadingCache<Long, SeededNoise> NOISES = CacheBuilder.newBuilder()
+            .weakValues()
+            .build(CacheLoader.from(SeededNoise::new));
+
+    private static final float SCALE = 1000f;
+    private static final int OCTAVES = 6;
+
+    /**
+     * The default frequency multiplier between two octaves of {@link BrownianNoise}
+     */
+    private static final double LACUNARITY = 2.1379201;
+
+    private static final int PROBE_AREAS = 16;
+    private static final int PROBE_CELLS = 4;
 
-    private Noise terrainNoise;
+    private volatile SeededNoise state;
 
     /**
      * @param seed the seed value
      */
     public NoiseHeightMap(long seed) {
-        setSeed(seed);
+        this(getNoise(seed));
+    }
+
+    private NoiseHeightMap(SeededNoise state) {
+        this.state = state;
     }
 
     /**
+     * Replaces the seed. The change is atomic and immediately visible to all threads.
      * @param seed the seed value
+     * @deprecated instances should not change their seed - use {@link #withSeed(long)} instead
      */
+    @Deprecated
     public void setSeed(long seed) {
-        terrainNoise = new BrownianNoise(new SimplexNoise(seed), 6);
+        state = getNoise(seed);
+    }
+
+    /**
+     * @param seed the seed value
+     * @return a new instance that uses the given seed - this instance remains unchanged
+     */
+    public NoiseHeightMap withSeed(long seed) {
+        return new NoiseHeightMap(seed);
+    }
+
+    /**
+     * @return the current seed value
+     */
+    public long getSeed() {
+        return state.seed;
+    }
+
+    private static SeededNoise getNoise(long seed) {
+        return NOISES.getUnchecked(seed);
+    }
+
+    /**
+     * Determines the largest lattice spacing for which bi-linear interpolation of this height map
+     * deviates by at most the given number of blocks. The starting point is half the wavelength
+     * of the highest octave. The spacing is halved until the interpolation error stays within bounds
+     * in a set of probe areas that are distributed (deterministically per seed) over the world.
+     * The probing is expensive, so the result is computed only once per seed and deviation.
+     * @param maxDeviation the maximum deviation in blocks
+     * @return the lattice spacing (a power of two)
+     */
+    public int getSampleSpacing(int maxDeviation) {
+        // use a fixed snapshot in case the seed is replaced concurrently
+        SeededNoise current = state;
+        Integer spacing = current.spacings.get(maxDeviation);
+        if (spacing == null) {
+            // concurrent callers may compute the same value - this is cheaper than blocking in computeIfAbsent
+            spacing = new NoiseHeightMap(current).computeSampleSpacing(maxDeviation);
+            current.spacings.putIfAbsent(maxDeviation, spacing);
+        }
+        return spacing;
+    }
+
+    private int computeSampleSpacing(int maxDeviation) {
+        double shortestWavelength = SCALE / Math.pow(LACUNARITY, OCTAVES - 1);
+        int spacing = Integer.highestOneBit(Math.max(1, (int) (shortestWavelength / 2)));
+
+        Random random = new Random(getSeed());
+        int[] probeX = new int[PROBE_AREAS];
+        int[] probeZ = new int[PROBE_AREAS];
+        for (int i = 0; i < PROBE_AREAS; i++) {
+            probeX[i] = random.nextInt(1 << 20) - (1 << 19);
+            probeZ[i] = random.nextInt(1 << 20) - (1 << 19);
+        }
+
+        while (spacing > 1 && getMaxDeviation(spacing, probeX, probeZ) > maxDeviation) {
+            spacing /= 2;
+        }
+        return spacing;
+    }
+
+    private int getMaxDeviation(int spacing, int[] probeX, int[] probeZ) {
+        int size = spacing * PROBE_CELLS;
+        int[] exact = new int[size * size];
+        int[] lerped = new int[size * size];
+        int max = 0;
+        for (int i = 0; i < probeX.length; i++) {
+            Rectanglei probe = new Rectanglei(probeX[i], probeZ[i], probeX[i] + size, probeZ[i] + size);
+            fill(probe, exact, 0, size);
+            new CachingLerpHeightMap(probe, this, spacing).fill(probe, lerped, 0, size);
+            for (int j = 0; j < exact.length; j++) {
+                max = Math.max(max, Math.abs(exact[j] - lerped[j]));
+            }
+        }
+        return max;
     }
 
     @Override
     public int apply(int x, int z) {
-        int val = 7;
-        val += (int) (terrainNoise.noise(x / 1000f, z / 1000f) * 8f);
+        return toHeight(state.noise.noise(x / SCALE, z / SCALE));
+    }
 
-        if (val < 1) {
-            val = 1;
+    /**
+     * Evaluates the noise row by row. The noise coordinates of the columns are computed only once
+     * and the conversion to heights runs as a separate branch-free loop over the row.
+     */
+    @Override
+    public void fill(Rectanglei area, int[] dest, int offset, int stride) {
+        fillStrided(area.minX(), area.minY(), area.getSizeX(), area.getSizeY(), 1, dest, offset, stride);
+    }
+
+    @Override
+    public void fillStrided(int minX, int minZ, int width, int height, int step, int[] dest, int offset, int stride) {
+        Noise terrainNoise = state.noise;
+        float[] xs = new float[width];
+        float[] row = new float[width];
+
+        for (int x = 0; x < width; x++) {
+            xs[x] = (minX + x * step) / SCALE;
+        }
+
+        for (int z = 0; z < height; z++) {
+            float nz = (minZ + z * step) / SCALE;
+            for (int x = 0; x < width; x++) {
+                row[x] = terrainNoise.noise(xs[x], nz);
+            }
+
+            int idx = offset + z * stride;
+            for (int x = 0; x < width; x++) {
+                dest[idx + x] = toHeight(row[x]);
+            }
         }
+    }
 
-        return val;
+    private static int toHeight(float noise) {
+        return Math.max(1, 7 + (int) (noise * 8f));
     }
 
+    /**
+     * An immutable combination of seed and noise tables, together with the sample spacings
+     * that have been determined for this seed
+     */
+    private static final class SeededNoise {
+        private final long seed;
+        private final Noise noise;
+        private final Map<Integer, Integer> spacings = Maps.newConcurrentMap();
 
+        SeededNoise(long seed) {
+            this.seed = seed;
+            this.noise = new BrownianNoise(new SimplexNoise(seed), OCTAVES);
+        }
+    }
 }
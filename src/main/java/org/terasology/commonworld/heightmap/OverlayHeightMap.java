@@ -0,0 +1,356 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.commonworld.heightmap;
+
+import org.terasology.commonworld.PackedCoordinates;
+import org.terasology.joml.geom.Rectanglei;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Stores the cells that differ from a base height map and falls through to the base for all others.
+ * The modified cells are kept in sparse 16x16 tiles, each with a bit mask of the cells that are set.
+ * Only the modifications are serialized, as (zig-zag, variable-length encoded) differences to the base,
+ * so the size of the data scales with the number of edits rather than with the area.
+ * Not thread-safe.
+ */
+public class OverlayHeightMap implements HeightMap {
+
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int TILE_SHIFT = 4;
+    private static final int TILE_SIZE = 1 << TILE_SHIFT;
+    private static final int TILE_MASK = TILE_SIZE - 1;
+    private static final int CELLS = TILE_SIZE * TILE_SIZE;
+
+    private static final int NONE = -1;
+
+    private final HeightMap base;
+
+    // packed tile coords -> tile index; tiles are stored compactly in [0..tileCount)
+    private final LongIntMap index = new LongIntMap(16, NONE);
+    private long[] keys = new long[16];
+    private long[][] masks = new long[16][];
+    private int[][] values = new int[16][];
+    private int tileCount;
+    private int editCount;
+
+    /**
+     * @param base the height map that provides all values that have not been modified
+     */
+    public OverlayHeightMap(HeightMap base) {
+        this.base = base;
+    }
+
+    /**
+     * Sets a height. If it is identical to the base height, the modification is removed instead.
+     * @param x the world x coord
+     * @param z the world z coord
+     * @param height the new height
+     */
+    public void set(int x, int z, int height) {
+        if (height == base.apply(x, z)) {
+            reset(x, z);
+        } else {
+            store(x, z, height);
+        }
+    }
+
+    /**
+     * Removes the modification of a cell, if there is one
+     * @param x the world x coord
+     * @param z the world z coord
+     */
+    public void reset(int x, int z) {
+        int tile = index.get(PackedCoordinates.pack(x >> TILE_SHIFT, z >> TILE_SHIFT));
+        if (tile == NONE) {
+            return;
+        }
+        int cell = cellIndex(x, z);
+        long[] mask = masks[tile];
+        long bit = 1L << cell;
+        if ((mask[cell >>> 6] & bit) != 0) {
+            mask[cell >>> 6] &= ~bit;
+            editCount--;
+            if (isEmpty(mask)) {
+                removeTile(tile);
+            }
+        }
+    }
+
+    /**
+     * @param x the world x coord
+     * @param z the world z coord
+     * @return true if the cell has been modified
+     */
+    public boolean isModified(int x, int z) {
+        int tile = index.get(PackedCoordinates.pack(x >> TILE_SHIFT, z >> TILE_SHIFT));
+        if (tile == NONE) {
+            return false;
+        }
+        int cell = cellIndex(x, z);
+        return (masks[tile][cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    /**
+     * @return the number of modified cells
+     */
+    public int getModifiedCount() {
+        return editCount;
+    }
+
+    /**
+     * @return the base height map
+     */
+    public HeightMap getBase() {
+        return base;
+    }
+
+    @Override
+    public int apply(int x, int z) {
+        int tile = index.get(PackedCoordinates.pack(x >> TILE_SHIFT, z >> TILE_SHIFT));
+        if (tile != NONE) {
+            int cell = cellIndex(x, z);
+            if ((masks[tile][cell >>> 6] & (1L << cell)) != 0) {
+                return values[tile][cell];
+            }
+        }
+        return base.apply(x, z);
+    }
+
+    @Override
+    public void fill(Rectanglei area, int[] dest, int offset, int stride) {
+        base.fill(area, dest, offset, stride);
+        if (tileCount == 0) {
+            return;
+        }
+
+        int tx0 = area.minX() >> TILE_SHIFT;
+        int tz0 = area.minY() >> TILE_SHIFT;
+        int tx1 = (area.minX() + area.getSizeX() - 1) >> TILE_SHIFT;
+        int tz1 = (area.minY() + area.getSizeY() - 1) >> TILE_SHIFT;
+
+        // either look up all tiles in the area or check all stored tiles, whichever is less
+        if ((long) (tx1 - tx0 + 1) * (tz1 - tz0 + 1) <= tileCount) {
+            for (int tz = tz0; tz <= tz1; tz++) {
+                for (int tx = tx0; tx <= tx1; tx++) {
+                    int tile = index.get(PackedCoordinates.pack(tx, tz));
+                    if (tile != NONE) {
+                        copyTile(tile, area, dest, offset, stride);
+                    }
+                }
+            }
+        } else {
+            for (int tile = 0; tile < tileCount; tile++) {
+                int tx = PackedCoordinates.unpackX(keys[tile]);
+                int tz = PackedCoordinates.unpackZ(keys[tile]);
+                if (tx >= tx0 && tx <= tx1 && tz >= tz0 && tz <= tz1) {
+                    copyTile(tile, area, dest, offset, stride);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes all modifications as differences to the base height map
+     * @param out the target
+     * @throws IOException if writing fails
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeByte(FORMAT_VERSION);
+        writeVarInt(out, tileCount);
+
+        // sorted tiles keep the coordinate differences small
+        long[] sorted = Arrays.copyOf(keys, tileCount);
+        Arrays.sort(sorted);
+
+        int prevX = 0;
+        int prevZ = 0;
+        for (long key : sorted) {
+            int tile = index.get(key);
+            int tx = PackedCoordinates.unpackX(key);
+            int tz = PackedCoordinates.unpackZ(key);
+            writeVarInt(out, zigZag(tx - prevX));
+            writeVarInt(out, zigZag(tz - prevZ));
+            prevX = tx;
+            prevZ = tz;
+
+            long[] mask = masks[tile];
+            int count = 0;
+            for (long word : mask) {
+                count += Long.bitCount(word);
+            }
+            writeVarInt(out, count);
+
+            int prevCell = -1;
+            for (int cell = nextCell(mask, 0); cell >= 0; cell = nextCell(mask, cell + 1)) {
+                int x = (tx << TILE_SHIFT) + (cell & TILE_MASK);
+                int z = (tz << TILE_SHIFT) + (cell >> TILE_SHIFT);
+                writeVarInt(out, cell - prevCell - 1);
+                writeVarInt(out, zigZag(values[tile][cell] - base.apply(x, z)));
+                prevCell = cell;
+            }
+        }
+    }
+
+    /**
+     * Reads modifications that were written by {@link #write(DataOutput)}
+     * @param base the base height map - it must be identical to the one that was used for writing
+     * @param in the source
+     * @return a new overlay height map
+     * @throws IOException if reading fails or the data is corrupt
+     */
+    public static OverlayHeightMap read(HeightMap base, DataInput in) throws IOException {
+        int version = in.readUnsignedByte();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported overlay format version " + version);
+        }
+
+        OverlayHeightMap overlay = new OverlayHeightMap(base);
+        int tiles = readVarInt(in);
+        int tx = 0;
+        int tz = 0;
+        for (int i = 0; i < tiles; i++) {
+            tx += unZigZag(readVarInt(in));
+            tz += unZigZag(readVarInt(in));
+            int count = readVarInt(in);
+            if (count > CELLS) {
+                throw new IOException("Invalid cell count " + count);
+            }
+            int cell = -1;
+            for (int j = 0; j < count; j++) {
+                cell += readVarInt(in) + 1;
+                if (cell < 0 || cell >= CELLS) {
+                    throw new IOException("Invalid cell index " + cell);
+                }
+                int x = (tx << TILE_SHIFT) + (cell & TILE_MASK);
+                int z = (tz << TILE_SHIFT) + (cell >> TILE_SHIFT);
+                overlay.store(x, z, base.apply(x, z) + unZigZag(readVarInt(in)));
+            }
+        }
+        return overlay;
+    }
+
+    private void store(int x, int z, int height) {
+        long key = PackedCoordinates.pack(x >> TILE_SHIFT, z >> TILE_SHIFT);
+        int tile = index.get(key);
+        if (tile == NONE) {
+            tile = addTile(key);
+        }
+        int cell = cellIndex(x, z);
+        long[] mask = masks[tile];
+        long bit = 1L << cell;
+        if ((mask[cell >>> 6] & bit) == 0) {
+            mask[cell >>> 6] |= bit;
+            editCount++;
+        }
+        values[tile][cell] = height;
+    }
+
+    private int addTile(long key) {
+        if (tileCount == keys.length) {
+            int capacity = keys.length * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            masks = Arrays.copyOf(masks, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        int tile = tileCount++;
+        keys[tile] = key;
+        masks[tile] = new long[CELLS / Long.SIZE];
+        values[tile] = new int[CELLS];
+        index.put(key, tile);
+        return tile;
+    }
+
+    private void removeTile(int tile) {
+        // move the last tile into the gap
+        int last = --tileCount;
+        index.remove(keys[tile]);
+        if (tile != last) {
+            keys[tile] = keys[last];
+            masks[tile] = masks[last];
+            values[tile] = values[last];
+            index.put(keys[tile], tile);
+        }
+        masks[last] = null;
+        values[last] = null;
+    }
+
+    private void copyTile(int tile, Rectanglei area, int[] dest, int offset, int stride) {
+        int ox = PackedCoordinates.unpackX(keys[tile]) << TILE_SHIFT;
+        int oz = PackedCoordinates.unpackZ(keys[tile]) << TILE_SHIFT;
+        long[] mask = masks[tile];
+        int[] vals = values[tile];
+        for (int cell = nextCell(mask, 0); cell >= 0; cell = nextCell(mask, cell + 1)) {
+            int lx = ox + (cell & TILE_MASK) - area.minX();
+            int lz = oz + (cell >> TILE_SHIFT) - area.minY();
+            if (lx >= 0 && lx < area.getSizeX() && lz >= 0 && lz < area.getSizeY()) {
+                dest[offset + lz * stride + lx] = vals[cell];
+            }
+        }
+    }
+
+    private static int cellIndex(int x, int z) {
+        return ((z & TILE_MASK) << TILE_SHIFT) | (x & TILE_MASK);
+    }
+
+    /**
+     * @return the index of the next set bit at or after the given index or -1
+     */
+    private static int nextCell(long[] mask, int from) {
+        int word = from >>> 6;
+        if (word >= mask.length) {
+            return -1;
+        }
+        long bits = mask[word] & (-1L << from);
+        while (bits == 0) {
+            if (++word == mask.length) {
+                return -1;
+            }
+            bits = mask[word];
+        }
+        return (word << 6) + Long.numberOfTrailingZeros(bits);
+    }
+
+    private static boolean isEmpty(long[] mask) {
+        for (long word : mask) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarInt(DataOutput out, int value) throws IOException {
+        int v = value;
+        while ((v & ~0x7F) != 0) {
+            out.writeByte((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte(v);
+    }
+
+    private static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable-length integer");
+    }
+}
@@ -0,0 +1,122 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.commonworld.heightmap;
+
+/**
+ * Immutable compact storage for a block of heights. Values are stored as offsets from the
+ * minimum value, packed with the number of bits that the value range of the block requires.
+ * A flat block needs no storage at all, a range of 64 blocks takes 6 bits per value.
+ * Blocks with a range that exceeds 31 bits are stored as plain ints.
+ */
+final class PackedHeightTile {
+
+    private final int min;
+    private final int bits;
+    private final long mask;
+    private final long[] packed;
+    private final int[] raw;
+
+    /**
+     * @param values the array that contains the values
+     * @param offset the index of the first value
+     * @param count the number of values
+     */
+    PackedHeightTile(int[] values, int offset, int count) {
+        int lo = Integer.MAX_VALUE;
+        int hi = Integer.MIN_VALUE;
+        for (int i = offset; i < offset + count; i++) {
+            lo = Math.min(lo, values[i]);
+            hi = Math.max(hi, values[i]);
+        }
+
+        long range = count == 0 ? 0 : (long) hi - lo;
+        this.min = lo;
+        this.bits = 64 - Long.numberOfLeadingZeros(range);
+
+        if (bits >= Integer.SIZE) {
+            this.mask = 0;
+            this.packed = null;
+            this.raw = new int[count];
+            System.arraycopy(values, offset, raw, 0, count);
+        } else if (bits == 0) {
+            this.mask = 0;
+            this.packed = new long[0];
+            this.raw = null;
+        } else {
+            this.mask = (1L << bits) - 1;
+            this.packed = new long[(int) (((long) count * bits + Long.SIZE - 1) / Long.SIZE)];
+            this.raw = null;
+            long bitPos = 0;
+            for (int i = offset; i < offset + count; i++) {
+                long v = values[i] - (long) lo;
+                int word = (int) (bitPos >>> 6);
+                int shift = (int) (bitPos & 63);
+                packed[word] |= v << shift;
+                if (shift + bits > Long.SIZE) {
+                    packed[word + 1] |= v >>> (Long.SIZE - shift);
+                }
+                bitPos += bits;
+            }
+        }
+    }
+
+    /**
+     * @param index the value index
+     * @return the value
+     */
+    int get(int index) {
+        if (raw != null) {
+            return raw[index];
+        }
+        if (bits == 0) {
+            return min;
+        }
+
+        long bitPos = (long) index * bits;
+        int word = (int) (bitPos >>> 6);
+        int shift = (int) (bitPos & 63);
+        long v = packed[word] >>> shift;
+        if (shift + bits > Long.SIZE) {
+            v |= packed[word + 1] << (Long.SIZE - shift);
+        }
+        return min + (int) (v & mask);
+    }
+
+    /**
+     * @param index the index of the first value
+     * @param dest the target array
+     * @param offset the index of the first element in the target array
+     * @param count the number of values to copy
+     */
+    void get(int index, int[] dest, int offset, int count) {
+        if (raw != null) {
+            System.arraycopy(raw, index, dest, offset, count);
+        } else if (bits == 0) {
+            for (int i = 0; i < count; i++) {
+                dest[offset + i] = min;
+            }
+        } else {
+            for (int i = 0; i < count; i++) {
+                dest[offset + i] = get(index + i);
+            }
+        }
+    }
+
+    /**
+     * @return the number of bits per value
+     */
+    int getBitsPerValue() {
+        return bits;
+    }
+
+    /**
+     * @return the approximate number of bytes that are occupied by the stored values
+     */
+    long getSizeInBytes() {
+        if (raw != null) {
+            return (long) raw.length * Integer.BYTES;
+        }
+        return (long) packed.length * Long.BYTES;
+    }
+}
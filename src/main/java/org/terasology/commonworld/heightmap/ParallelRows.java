@@ -0,0 +1,51 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.commonworld.heightmap;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Splits row-based work into bands of consecutive rows that are processed by an {@link Executor}.
+ */
+final class ParallelRows {
+
+    private static final int MIN_ROWS_PER_BAND = 8;
+    private static final int MAX_BANDS = 256;
+
+    private ParallelRows() {
+        // avoid instantiation
+    }
+
+    /**
+     * @param rowCount the total number of rows
+     * @param executor the executor that runs the bands
+     * @param task the task that processes a range of rows
+     * @return a future that completes once all rows have been processed
+     */
+    static CompletableFuture<Void> run(int rowCount, Executor executor, RowTask task) {
+        int bandRows = Math.max(MIN_ROWS_PER_BAND, (rowCount + MAX_BANDS - 1) / MAX_BANDS);
+        int bandCount = (rowCount + bandRows - 1) / bandRows;
+
+        CompletableFuture<?>[] bands = new CompletableFuture<?>[bandCount];
+        for (int i = 0; i < bandCount; i++) {
+            int from = i * bandRows;
+            int to = Math.min(rowCount, from + bandRows);
+            bands[i] = CompletableFuture.runAsync(() -> task.run(from, to), executor);
+        }
+        return CompletableFuture.allOf(bands);
+    }
+
+    /**
+     * Processes a range of rows
+     */
+    interface RowTask {
+
+        /**
+         * @param fromRow the first row (inclusive)
+         * @param toRow the last row (exclusive)
+         */
+        void run(int fromRow, int toRow);
+    }
+}
@@ -0,0 +1,151 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.commonworld.heightmap;
+
+import org.terasology.joml.geom.Rectanglei;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Traverses the cells of a rectangular region of a height map in row-major order.
+ * Splits happen at row boundaries as long as the remaining range covers several rows;
+ * a single remaining row is split in the middle. Heights are read one row segment at a time
+ * through {@link HeightMap#fill(Rectanglei, int[], int, int)}.
+ * <br>
+ * Use {@link #forEachRemainingCell(HeightCellConsumer)} to avoid creating {@link HeightCell} objects.
+ * The height map must support concurrent access if the spliterator is used in parallel.
+ */
+public final class RegionSpliterator implements Spliterator<HeightCell> {
+
+    /**
+     * Ranges with fewer cells are not split any further
+     */
+    private static final int MIN_SPLIT_SIZE = 1024;
+
+    private static final int CHARACTERISTICS = ORDERED | DISTINCT | SIZED | SUBSIZED | IMMUTABLE | NONNULL;
+
+    private final HeightMap hm;
+    private final int minX;
+    private final int minZ;
+    private final int width;
+
+    // row-major cell indices relative to (minX, minZ)
+    private long index;
+    private final long end;
+
+    // the heights of the current row segment, starting at cell index bufferStart
+    private int[] buffer;
+    private long bufferStart = -1;
+    private int bufferLength;
+
+    /**
+     * @param hm the height map
+     * @param area the region to traverse
+     */
+    RegionSpliterator(HeightMap hm, Rectanglei area) {
+        this(hm, area.minX(), area.minY(), area.getSizeX(), 0, (long) area.getSizeX() * area.getSizeY());
+    }
+
+    private RegionSpliterator(HeightMap hm, int minX, int minZ, int width, long index, long end) {
+        this.hm = hm;
+        this.minX = minX;
+        this.minZ = minZ;
+        this.width = width;
+        this.index = index;
+        this.end = end;
+    }
+
+    /**
+     * Passes all remaining cells to the consumer without boxing
+     * @param action the consumer
+     */
+    public void forEachRemainingCell(HeightCellConsumer action) {
+        bufferStart = -1;
+        while (index < end) {
+            int lz = (int) (index / width);
+            int lx = (int) (index - (long) lz * width);
+            int count = (int) Math.min(end - index, width - lx);
+            int x0 = minX + lx;
+            int z = minZ + lz;
+            int[] heights = fillSegment(x0, z, count);
+            for (int i = 0; i < count; i++) {
+                action.accept(x0 + i, z, heights[i]);
+            }
+            index += count;
+        }
+    }
+
+    /**
+     * Passes the next cell to the consumer without boxing
+     * @param action the consumer
+     * @return false if no cells remain
+     */
+    public boolean tryAdvanceCell(HeightCellConsumer action) {
+        if (index >= end) {
+            return false;
+        }
+
+        int lz = (int) (index / width);
+        int lx = (int) (index - (long) lz * width);
+        if (bufferStart < 0 || index < bufferStart || index >= bufferStart + bufferLength) {
+            bufferLength = (int) Math.min(end - index, width - lx);
+            fillSegment(minX + lx, minZ + lz, bufferLength);
+            bufferStart = index;
+        }
+        action.accept(minX + lx, minZ + lz, buffer[(int) (index - bufferStart)]);
+        index++;
+        return true;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super HeightCell> action) {
+        return tryAdvanceCell((x, z, h) -> action.accept(new HeightCell(x, z, h)));
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super HeightCell> action) {
+        forEachRemainingCell((x, z, h) -> action.accept(new HeightCell(x, z, h)));
+    }
+
+    @Override
+    public RegionSpliterator trySplit() {
+        long remaining = end - index;
+        if (remaining < 2 * MIN_SPLIT_SIZE) {
+            return null;
+        }
+
+        long firstRow = index / width;
+        long lastRow = (end - 1) / width;
+        long mid;
+        if (lastRow > firstRow) {
+            mid = (firstRow + lastRow + 1) / 2 * width;
+        } else {
+            mid = index + remaining / 2;
+        }
+
+        RegionSpliterator prefix = new RegionSpliterator(hm, minX, minZ, width, index, mid);
+        index = mid;
+        bufferStart = -1;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return end - index;
+    }
+
+    @Override
+    public int characteristics() {
+        return CHARACTERISTICS;
+    }
+
+    private int[] fillSegment(int x0, int z, int count) {
+        if (buffer == null || buffer.length < count) {
+            buffer = new int[count];
+        }
+        hm.fill(new Rectanglei(x0, z, x0 + count, z + 1), buffer, 0, count);
+        return buffer;
+    }
+}
@@ -0,0 +1,65 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.commonworld.heightmap;
+
+import org.terasology.joml.geom.Rectanglei;
+
+/**
+ * An implementation that returns other.height at (x * scale, z * scale).
+ * Bulk requests are forwarded as a whole if the base is a {@link StridedHeightMap}.
+ */
+class ScalingAreaHeightMap implements HeightMap {
+
+    private final HeightMap base;
+    private final int scale;
+
+    /**
+     * @param base the base height map
+     * @param scale the coordinate scale factor
+     */
+    ScalingAreaHeightMap(HeightMap base, int scale) {
+        this.base = base;
+        this.scale = scale;
+    }
+
+    /**
+     * @return the base height map
+     */
+    HeightMap getBase() {
+        return base;
+    }
+
+    /**
+     * @return the coordinate scale factor
+     */
+    int getScale() {
+        return scale;
+    }
+
+    @Override
+    public int apply(int x, int z) {
+        return base.apply(x * scale, z * scale);
+    }
+
+    @Override
+    public void fill(Rectanglei area, int[] dest, int offset, int stride) {
+        if (base instanceof StridedHeightMap) {
+            ((StridedHeightMap) base).fillStrided(area.minX() * scale, area.minY() * scale,
+                    area.getSizeX(), area.getSizeY(), scale, dest, offset, stride);
+            return;
+        }
+
+        // the samples are scale blocks apart, so they cannot be forwarded as one area of a plain height map
+        int bx0 = area.minX() * scale;
+        for (int z = 0; z < area.getSizeY(); z++) {
+            int idx = offset + z * stride;
+            int bz = (area.minY() + z) * scale;
+            int bx = bx0;
+            for (int x = 0; x < area.getSizeX(); x++) {
+                dest[idx + x] = base.apply(bx, bz);
+                bx += scale;
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.commonworld.heightmap;
+
+/**
+ * A height map that can compute a regularly spaced subset of an area in one go.
+ * This lets {@link ScalingAreaHeightMap} forward bulk requests to its base.
+ */
+interface StridedHeightMap extends HeightMap {
+
+    /**
+     * Computes the heights at (minX + i * step, minZ + j * step) for all 0 &lt;= i &lt; width and 0 &lt;= j &lt; height.
+     * The height for (i, j) is written to <code>dest[offset + j * stride + i]</code>.
+     * @param minX the x world coord of the first sample
+     * @param minZ the z world coord of the first sample
+     * @param width the number of samples per row
+     * @param height the number of rows
+     * @param step the distance between two samples in blocks
+     * @param dest the target array
+     * @param offset the array index of the first sample
+     * @param stride the distance between two rows in the array
+     */
+    void fillStrided(int minX, int minZ, int width, int height, int step, int[] dest, int offset, int stride);
+}
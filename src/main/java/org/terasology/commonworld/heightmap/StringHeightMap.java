@@ -16,6 +16,8 @@
 
 package org.terasology.commonworld.heightmap;
 
+import org.terasology.joml.geom.Rectanglei;
+
 import java.util.List;
 
 /**
@@ -37,4 +39,15 @@ class StringHeightMap implements HeightMap {
         return data.get(z).codePointAt(x);
     }
 
+    @Override
+    public void fill(Rectanglei area, int[] dest, int offset, int stride) {
+        for (int z = 0; z < area.getSizeY(); z++) {
+            String row = data.get(area.minY() + z);
+            int idx = offset + z * stride;
+            for (int x = 0; x < area.getSizeX(); x++) {
+                dest[idx + x] = row.codePointAt(area.minX() + x);
+            }
+        }
+    }
+
 }
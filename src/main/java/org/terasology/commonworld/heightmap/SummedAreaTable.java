@@ -0,0 +1,206 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.commonworld.heightmap;
+
+import com.google.common.base.Preconditions;
+import org.terasology.joml.geom.Rectanglei;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * An integral image of the heights (and the squared heights) of a rectangular area.
+ * The sum, mean and variance of any rectangle inside the area are computed from four entries each.
+ * Entry (x, z) contains the sum of all cells (x', z') with x' &lt; x and z' &lt; z, relative to the area origin,
+ * so the first row and column are zero. Updates must not run concurrently with queries.
+ */
+public final class SummedAreaTable implements HeightMapListener {
+
+    private final Rectanglei area;
+    private final HeightMap hm;
+    private final int stride;
+    private final long[] sums;
+    private final long[] squares;
+
+    private SummedAreaTable(HeightMap hm, Rectanglei area) {
+        Preconditions.checkArgument(area.getSizeX() > 0 && area.getSizeY() > 0, "area must not be empty");
+        this.area = area;
+        this.hm = hm;
+        this.stride = area.getSizeX() + 1;
+        this.sums = new long[stride * (area.getSizeY() + 1)];
+        this.squares = new long[sums.length];
+    }
+
+    /**
+     * @param hm the height map to use
+     * @param area the area to cover
+     * @return the summed-area table of the area
+     */
+    static SummedAreaTable create(HeightMap hm, Rectanglei area) {
+        SummedAreaTable table = new SummedAreaTable(hm, area);
+        table.computeRowPrefixes(0, area.getSizeY());
+        table.computeColumnPrefixes(0, table.stride);
+        return table;
+    }
+
+    /**
+     * Computes the table in two parallel passes: prefix sums along the rows in bands of rows,
+     * then prefix sums along the columns in bands of columns. The result is identical to {@link #create}.
+     * @param hm the height map to use - it must be thread-safe
+     * @param area the area to cover
+     * @param executor the executor that processes the bands
+     * @return a future that completes with the summed-area table
+     */
+    static CompletableFuture<SummedAreaTable> createAsync(HeightMap hm, Rectanglei area, Executor executor) {
+        SummedAreaTable table = new SummedAreaTable(hm, area);
+        return ParallelRows.run(area.getSizeY(), executor, table::computeRowPrefixes)
+                .thenCompose(v -> ParallelRows.run(table.stride, executor, table::computeColumnPrefixes))
+                .thenApply(v -> table);
+    }
+
+    private void computeRowPrefixes(int fromRow, int toRow) {
+        int width = area.getSizeX();
+        int[] row = new int[width];
+        for (int z = fromRow; z < toRow; z++) {
+            Rectanglei rc = new Rectanglei(area.minX(), area.minY() + z, area.minX() + width, area.minY() + z + 1);
+            hm.fill(rc, row, 0, width);
+            int idx = (z + 1) * stride;
+            long sum = 0;
+            long square = 0;
+            for (int x = 0; x < width; x++) {
+                long h = row[x];
+                sum += h;
+                square += h * h;
+                sums[idx + x + 1] = sum;
+                squares[idx + x + 1] = square;
+            }
+        }
+    }
+
+    private void computeColumnPrefixes(int fromColumn, int toColumn) {
+        // walk row by row to access memory sequentially
+        for (int z = 2; z <= area.getSizeY(); z++) {
+            int idx = z * stride;
+            for (int x = fromColumn; x < toColumn; x++) {
+                sums[idx + x] += sums[idx - stride + x];
+                squares[idx + x] += squares[idx - stride + x];
+            }
+        }
+    }
+
+    /**
+     * @return the covered area
+     */
+    public Rectanglei getArea() {
+        return area;
+    }
+
+    /**
+     * @param rc the rectangle - it must be inside the area
+     * @return the sum of all heights in the rectangle
+     */
+    public long sum(Rectanglei rc) {
+        checkInside(rc);
+        return query(sums, rc);
+    }
+
+    /**
+     * @param rc the rectangle - it must be inside the area
+     * @return the sum of all squared heights in the rectangle
+     */
+    public long sumOfSquares(Rectanglei rc) {
+        checkInside(rc);
+        return query(squares, rc);
+    }
+
+    /**
+     * @param rc the rectangle - it must be inside the area and not empty
+     * @return the mean height in the rectangle
+     */
+    public double mean(Rectanglei rc) {
+        checkInside(rc);
+        long count = (long) rc.getSizeX() * rc.getSizeY();
+        return query(sums, rc) / (double) count;
+    }
+
+    /**
+     * @param rc the rectangle - it must be inside the area and not empty
+     * @return the (population) variance of the heights in the rectangle
+     */
+    public double variance(Rectanglei rc) {
+        checkInside(rc);
+        double count = (double) rc.getSizeX() * rc.getSizeY();
+        double sum = query(sums, rc);
+        double variance = (query(squares, rc) - sum * sum / count) / count;
+        return Math.max(0, variance);
+    }
+
+    /**
+     * Reads the heights in the given rectangle from the height map again and updates the table.
+     * All entries below and to the right of the rectangle's upper left corner are affected.
+     * @param rc the rectangle that has changed - it is clipped to the area
+     */
+    public void update(Rectanglei rc) {
+        int x0 = Math.max(rc.minX(), area.minX()) - area.minX();
+        int z0 = Math.max(rc.minY(), area.minY()) - area.minY();
+        int x1 = Math.min(rc.minX() + rc.getSizeX(), area.minX() + area.getSizeX()) - area.minX();
+        int z1 = Math.min(rc.minY() + rc.getSizeY(), area.minY() + area.getSizeY()) - area.minY();
+        if (x0 >= x1 || z0 >= z1) {
+            return;
+        }
+
+        int tw = x1 - x0;
+        int th = z1 - z0;
+        int[] heights = new int[tw * th];
+        Rectanglei changed = new Rectanglei(area.minX() + x0, area.minY() + z0, area.minX() + x1, area.minY() + z1);
+        hm.fill(changed, heights, 0, tw);
+
+        // prefix sums of the differences between new and old values within the rectangle
+        int dstride = tw + 1;
+        long[] deltaSums = new long[dstride * (th + 1)];
+        long[] deltaSquares = new long[deltaSums.length];
+        for (int z = 0; z < th; z++) {
+            for (int x = 0; x < tw; x++) {
+                int i = (z0 + z) * stride + x0 + x;
+                long old = sums[i + stride + 1] - sums[i + 1] - sums[i + stride] + sums[i];
+                long h = heights[z * tw + x];
+                int d = (z + 1) * dstride + x + 1;
+                deltaSums[d] = (h - old) + deltaSums[d - 1] + deltaSums[d - dstride] - deltaSums[d - dstride - 1];
+                deltaSquares[d] = (h * h - old * old)
+                        + deltaSquares[d - 1] + deltaSquares[d - dstride] - deltaSquares[d - dstride - 1];
+            }
+        }
+
+        // beyond the rectangle, the last row/column of the differences applies
+        for (int z = z0 + 1; z <= area.getSizeY(); z++) {
+            int dz = Math.min(z - z0, th) * dstride;
+            for (int x = x0 + 1; x <= area.getSizeX(); x++) {
+                int d = dz + Math.min(x - x0, tw);
+                sums[z * stride + x] += deltaSums[d];
+                squares[z * stride + x] += deltaSquares[d];
+            }
+        }
+    }
+
+    @Override
+    public void onHeightChanged(Rectanglei changed) {
+        update(changed);
+    }
+
+    private long query(long[] table, Rectanglei rc) {
+        int x0 = rc.minX() - area.minX();
+        int z0 = rc.minY() - area.minY();
+        int x1 = x0 + rc.getSizeX();
+        int z1 = z0 + rc.getSizeY();
+        return table[z1 * stride + x1] - table[z0 * stride + x1] - table[z1 * stride + x0] + table[z0 * stride + x0];
+    }
+
+    private void checkInside(Rectanglei rc) {
+        Preconditions.checkArgument(rc.getSizeX() > 0 && rc.getSizeY() > 0, "rectangle must not be empty");
+        Preconditions.checkArgument(rc.minX() >= area.minX() && rc.minY() >= area.minY()
+                && rc.minX() + rc.getSizeX() <= area.minX() + area.getSizeX()
+                && rc.minY() + rc.getSizeY() <= area.minY() + area.getSizeY(),
+                "rectangle %s is not inside the area %s", rc, area);
+    }
+}
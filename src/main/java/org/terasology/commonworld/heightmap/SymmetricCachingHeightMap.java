@@ -0,0 +1,212 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.commonworld.heightmap;
+
+import org.terasology.commonworld.PackedCoordinates;
+import org.terasology.commonworld.symmetry.Symmetry;
+import org.terasology.joml.geom.Rectanglei;
+
+import java.util.Arrays;
+
+/**
+ * A symmetric cache that stores only the non-mirrored cells. Every cell of the area is mapped onto its
+ * non-mirrored counterpart, which is then looked up in a list of row intervals. The height map is
+ * evaluated only for those cells, so mirrored worlds need about half the memory and computation.
+ * Bulk requests are split into runs (see {@link Symmetry#forEachRun}) that are copied from the stored rows.
+ */
+class SymmetricCachingHeightMap implements MeasuredHeightMap {
+
+    private final Rectanglei area;
+    private final HeightMap hm;
+    private final Symmetry sym;
+
+    // provides the values outside of the area
+    private final HeightMap outside;
+
+    // the stored interval [rowStart, rowEnd) of every row in [minRow, minRow + rowStart.length)
+    private final int minRow;
+    private final int[] rowStart;
+    private final int[] rowEnd;
+    private final int[] rowOffset;
+    private final int[] heights;
+
+    private volatile HeightMapStats stats;
+
+    /**
+     * @param area the area to cache
+     * @param hm the height map to use (not symmetric)
+     * @param sym the symmetry
+     */
+    SymmetricCachingHeightMap(Rectanglei area, HeightMap hm, Symmetry sym) {
+        this.area = area;
+        this.hm = hm;
+        this.sym = sym;
+        this.outside = new SymmetricHeightMap(hm, sym);
+
+        // the rows that are covered by the non-mirrored counterparts of all cells
+        int[] rowRange = {Integer.MAX_VALUE, Integer.MIN_VALUE};
+        sym.forEachRun(area, (x, z, length, mirrored, srcX, srcZ, stepX, stepZ) -> {
+            int lastZ = srcZ + (length - 1) * stepZ;
+            rowRange[0] = Math.min(rowRange[0], Math.min(srcZ, lastZ));
+            rowRange[1] = Math.max(rowRange[1], Math.max(srcZ, lastZ));
+        });
+
+        int rows = Math.max(0, rowRange[1] - rowRange[0] + 1);
+        this.minRow = rowRange[0];
+        this.rowStart = new int[rows];
+        this.rowEnd = new int[rows];
+        this.rowOffset = new int[rows];
+        Arrays.fill(rowStart, Integer.MAX_VALUE);
+        Arrays.fill(rowEnd, Integer.MIN_VALUE);
+
+        sym.forEachRun(area, (x, z, length, mirrored, srcX, srcZ, stepX, stepZ) -> {
+            if (stepZ == 0) {
+                // all sources are in the same row
+                int lastX = srcX + (length - 1) * stepX;
+                extendRow(srcZ, Math.min(srcX, lastX), Math.max(srcX, lastX));
+            } else {
+                for (int i = 0; i < length; i++) {
+                    int cx = srcX + i * stepX;
+                    extendRow(srcZ + i * stepZ, cx, cx);
+                }
+            }
+        });
+
+        int total = 0;
+        for (int r = 0; r < rows; r++) {
+            if (rowEnd[r] < rowStart[r]) {
+                // no cell maps onto this row
+                rowStart[r] = 0;
+                rowEnd[r] = 0;
+            }
+            rowOffset[r] = total;
+            total += rowEnd[r] - rowStart[r];
+        }
+
+        this.heights = new int[total];
+        for (int r = 0; r < rows; r++) {
+            int width = rowEnd[r] - rowStart[r];
+            if (width > 0) {
+                int z = minRow + r;
+                hm.fill(new Rectanglei(rowStart[r], z, rowEnd[r], z + 1), heights, rowOffset[r], width);
+            }
+        }
+    }
+
+    private void extendRow(int z, int fromX, int toX) {
+        int r = z - minRow;
+        rowStart[r] = Math.min(rowStart[r], fromX);
+        rowEnd[r] = Math.max(rowEnd[r], toX + 1);
+    }
+
+    /**
+     * @return the number of stored heights
+     */
+    int getCellCount() {
+        return heights.length;
+    }
+
+    @Override
+    public void setStats(HeightMapStats stats) {
+        this.stats = stats;
+    }
+
+    @Override
+    public long getSizeInBytes() {
+        return (long) (heights.length + rowStart.length + rowEnd.length + rowOffset.length) * Integer.BYTES;
+    }
+
+    @Override
+    public int apply(int x, int z) {
+        int cx = x;
+        int cz = z;
+        if (sym.isMirrored(x, z)) {
+            long mirrored = sym.getMirroredPacked(x, z);
+            cx = PackedCoordinates.unpackX(mirrored);
+            cz = PackedCoordinates.unpackZ(mirrored);
+        }
+
+        boolean xOk = x >= area.minX() && x < area.minX() + area.getSizeX();
+        boolean zOk = z >= area.minY() && z < area.minY() + area.getSizeY();
+
+        if (xOk && zOk) {
+            HeightMapStats counters = stats;
+            if (counters != null) {
+                counters.recordHit();
+            }
+            int r = cz - minRow;
+            return heights[rowOffset[r] + cx - rowStart[r]];
+        }
+
+        HeightMapStats counters = stats;
+        if (counters != null) {
+            counters.recordFallback();
+        }
+
+        return hm.apply(cx, cz);
+    }
+
+    @Override
+    public void fill(Rectanglei target, int[] dest, int offset, int stride) {
+        int minX = Math.max(target.minX(), area.minX());
+        int maxX = Math.min(target.minX() + target.getSizeX(), area.minX() + area.getSizeX());
+        int minZ = Math.max(target.minY(), area.minY());
+        int maxZ = Math.min(target.minY() + target.getSizeY(), area.minY() + area.getSizeY());
+
+        if (minX >= maxX || minZ >= maxZ) {
+            fillOutside(target, dest, offset, stride);
+            return;
+        }
+
+        // the bands above, below, left and right of the cached part are taken from the underlying height map
+        int tMaxX = target.minX() + target.getSizeX();
+        int tMaxZ = target.minY() + target.getSizeY();
+        fillPart(target, target.minX(), target.minY(), tMaxX, minZ, dest, offset, stride);
+        fillPart(target, target.minX(), maxZ, tMaxX, tMaxZ, dest, offset, stride);
+        fillPart(target, target.minX(), minZ, minX, maxZ, dest, offset, stride);
+        fillPart(target, maxX, minZ, tMaxX, maxZ, dest, offset, stride);
+
+        HeightMapStats counters = stats;
+        if (counters != null) {
+            counters.recordHits((long) (maxX - minX) * (maxZ - minZ));
+        }
+
+        Rectanglei inside = new Rectanglei(minX, minZ, maxX, maxZ);
+        sym.forEachRun(inside, (x, z, length, mirrored, srcX, srcZ, stepX, stepZ) -> {
+            int idx = offset + (z - target.minY()) * stride + (x - target.minX());
+            if (stepZ == 0) {
+                int r = srcZ - minRow;
+                int start = rowOffset[r] + srcX - rowStart[r];
+                if (stepX == 1) {
+                    // also covers all non-mirrored runs
+                    System.arraycopy(heights, start, dest, idx, length);
+                } else {
+                    for (int i = 0; i < length; i++) {
+                        dest[idx + i] = heights[start + i * stepX];
+                    }
+                }
+            } else {
+                for (int i = 0; i < length; i++) {
+                    int r = srcZ + i * stepZ - minRow;
+                    dest[idx + i] = heights[rowOffset[r] + srcX + i * stepX - rowStart[r]];
+                }
+            }
+        });
+    }
+
+    private void fillPart(Rectanglei target, int minX, int minZ, int maxX, int maxZ, int[] dest, int offset, int stride) {
+        if (minX < maxX && minZ < maxZ) {
+            int idx = offset + (minZ - target.minY()) * stride + (minX - target.minX());
+            fillOutside(new Rectanglei(minX, minZ, maxX, maxZ), dest, idx, stride);
+        }
+    }
+
+    private void fillOutside(Rectanglei part, int[] dest, int offset, int stride) {
+        HeightMapStats counters = stats;
+        if (counters != null) {
+            counters.recordFallbacks((long) part.getSizeX() * part.getSizeY());
+        }
+        outside.fill(part, dest, offset, stride);
+    }
+}
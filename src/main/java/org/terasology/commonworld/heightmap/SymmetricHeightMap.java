@@ -0,0 +1,105 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.commonworld.heightmap;
+
+import org.terasology.commonworld.PackedCoordinates;
+import org.terasology.commonworld.symmetry.MirrorRunConsumer;
+import org.terasology.commonworld.symmetry.Symmetry;
+import org.terasology.joml.geom.Rectanglei;
+
+/**
+ * Mirrors a height map w.r.t. a {@link Symmetry}. Bulk requests are split into runs
+ * (see {@link Symmetry#forEachRun}) that are read from the underlying height map in one go.
+ */
+class SymmetricHeightMap implements HeightMap {
+
+    private final HeightMap hm;
+    private final Symmetry sym;
+
+    /**
+     * @param hm the height map that provides the non-mirrored part
+     * @param sym the symmetry
+     */
+    SymmetricHeightMap(HeightMap hm, Symmetry sym) {
+        this.hm = hm;
+        this.sym = sym;
+    }
+
+    @Override
+    public int apply(int x, int z) {
+        if (sym.isMirrored(x, z)) {
+            long mirrored = sym.getMirroredPacked(x, z);
+            return hm.apply(PackedCoordinates.unpackX(mirrored), PackedCoordinates.unpackZ(mirrored));
+        } else {
+            return hm.apply(x, z);
+        }
+    }
+
+    @Override
+    public void fill(Rectanglei area, int[] dest, int offset, int stride) {
+        sym.forEachRun(area, new RunFiller(area, dest, offset, stride));
+    }
+
+    /**
+     * Copies the runs of a single fill request. The source rectangle is reused for all runs
+     * and the buffer is only needed for reversed rows and for columns.
+     */
+    private final class RunFiller implements MirrorRunConsumer {
+
+        private final Rectanglei area;
+        private final int[] dest;
+        private final int offset;
+        private final int stride;
+        private final Rectanglei source = new Rectanglei();
+        private int[] buffer;
+
+        RunFiller(Rectanglei area, int[] dest, int offset, int stride) {
+            this.area = area;
+            this.dest = dest;
+            this.offset = offset;
+            this.stride = stride;
+        }
+
+        @Override
+        public void accept(int x, int z, int length, boolean mirrored, int srcX, int srcZ, int stepX, int stepZ) {
+            int idx = offset + (z - area.minY()) * stride + (x - area.minX());
+            if (stepZ == 0 && stepX == 1) {
+                // also covers all non-mirrored runs
+                source.setMin(srcX, srcZ).setMax(srcX + length, srcZ + 1);
+                hm.fill(source, dest, idx, stride);
+            } else if (stepZ == 0 && stepX == -1) {
+                source.setMin(srcX - length + 1, srcZ).setMax(srcX + 1, srcZ + 1);
+                hm.fill(source, buffer(), 0, length);
+                reverseCopy(buffer, dest, idx, length);
+            } else if (stepX == 0 && stepZ == 1) {
+                // a column with a stride of 1 ends up consecutive in the buffer
+                source.setMin(srcX, srcZ).setMax(srcX + 1, srcZ + length);
+                hm.fill(source, buffer(), 0, 1);
+                System.arraycopy(buffer, 0, dest, idx, length);
+            } else if (stepX == 0 && stepZ == -1) {
+                source.setMin(srcX, srcZ - length + 1).setMax(srcX + 1, srcZ + 1);
+                hm.fill(source, buffer(), 0, 1);
+                reverseCopy(buffer, dest, idx, length);
+            } else {
+                for (int i = 0; i < length; i++) {
+                    dest[idx + i] = hm.apply(srcX + i * stepX, srcZ + i * stepZ);
+                }
+            }
+        }
+
+        private int[] buffer() {
+            if (buffer == null) {
+                // no run is longer than a row of the area
+                buffer = new int[area.getSizeX()];
+            }
+            return buffer;
+        }
+    }
+
+    private static void reverseCopy(int[] src, int[] dest, int destIdx, int length) {
+        for (int i = 0; i < length; i++) {
+            dest[destIdx + i] = src[length - 1 - i];
+        }
+    }
+}
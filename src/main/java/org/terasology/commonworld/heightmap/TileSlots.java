@@ -0,0 +1,161 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.commonworld.heightmap;
+
+import java.util.function.LongPredicate;
+
+/**
+ * Maps tile keys to a fixed number of storage slots and keeps track of their usage order
+ * so that the least recently used slot can be recycled. Not thread-safe.
+ */
+class TileSlots {
+
+    static final int NONE = -1;
+
+    private final LongIntMap index;
+    private final long[] keys;
+
+    // doubly-linked list of occupied slots, most recently used first
+    private final int[] prev;
+    private final int[] next;
+    private int head = NONE;
+    private int tail = NONE;
+
+    // slots that have been released through remove()
+    private final int[] free;
+    private int freeCount;
+    private int usedSlots;
+
+    /**
+     * @param capacity the number of slots
+     */
+    TileSlots(int capacity) {
+        this.index = new LongIntMap(capacity, NONE);
+        this.keys = new long[capacity];
+        this.prev = new int[capacity];
+        this.next = new int[capacity];
+        this.free = new int[capacity];
+    }
+
+    /**
+     * @return the number of slots
+     */
+    int capacity() {
+        return keys.length;
+    }
+
+    /**
+     * @return the slot that was used most recently or {@link #NONE}
+     */
+    int first() {
+        return head;
+    }
+
+    /**
+     * @param slot the slot index
+     * @return the key that is currently stored in the slot
+     */
+    long keyOf(int slot) {
+        return keys[slot];
+    }
+
+    /**
+     * Looks up a key and marks its slot as most recently used.
+     * @param key the tile key
+     * @return the slot index or {@link #NONE}
+     */
+    int get(long key) {
+        if (head != NONE && keys[head] == key) {
+            return head;
+        }
+
+        int slot = index.get(key);
+        if (slot != NONE) {
+            unlink(slot);
+            linkFirst(slot);
+        }
+        return slot;
+    }
+
+    /**
+     * Assigns a slot to a key that is not present yet. If all slots are in use,
+     * the least recently used one is recycled.
+     * @param key the tile key
+     * @return the slot index
+     */
+    int claim(long key) {
+        int slot;
+        if (freeCount > 0) {
+            slot = free[--freeCount];
+        } else if (usedSlots < keys.length) {
+            slot = usedSlots++;
+        } else {
+            slot = tail;
+            unlink(slot);
+            index.remove(keys[slot]);
+        }
+
+        keys[slot] = key;
+        index.put(key, slot);
+        linkFirst(slot);
+        return slot;
+    }
+
+    /**
+     * @param key the tile key
+     * @return the slot that was released or {@link #NONE}
+     */
+    int remove(long key) {
+        int slot = index.remove(key);
+        if (slot != NONE) {
+            unlink(slot);
+            free[freeCount++] = slot;
+        }
+        return slot;
+    }
+
+    /**
+     * Removes all keys that match the filter
+     * @param filter the filter
+     * @return the number of removed keys
+     */
+    int removeIf(LongPredicate filter) {
+        int count = 0;
+        int slot = head;
+        while (slot != NONE) {
+            int following = next[slot];
+            if (filter.test(keys[slot])) {
+                remove(keys[slot]);
+                count++;
+            }
+            slot = following;
+        }
+        return count;
+    }
+
+    private void unlink(int slot) {
+        if (prev[slot] != NONE) {
+            next[prev[slot]] = next[slot];
+        } else {
+            head = next[slot];
+        }
+        if (next[slot] != NONE) {
+            prev[next[slot]] = prev[slot];
+        } else {
+            tail = prev[slot];
+        }
+    }
+
+    private void linkFirst(int slot) {
+        prev[slot] = NONE;
+        next[slot] = head;
+        if (head != NONE) {
+            prev[head] = slot;
+        }
+        head = slot;
+        if (tail == NONE) {
+            tail = slot;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.commonworld.heightmap;
+
+import com.google.common.base.Preconditions;
+import org.terasology.commonworld.PackedCoordinates;
+
+/**
+ * A cache that computes square tiles on first access and keeps at most a fixed number
+ * of them, evicting the least recently used tile. Covers the entire (unbounded) world.
+ * Not thread-safe.
+ */
+class TiledCachingHeightMap extends AbstractTiledHeightMap {
+
+    private final HeightMap hm;
+
+    private final TileSlots slots;
+    private final int[][] tiles;
+
+    /**
+     * @param hm the height map to use
+     * @param tileSize the edge length of a tile
+     * @param maxTiles the maximum number of tiles to keep in memory
+     */
+    TiledCachingHeightMap(HeightMap hm, int tileSize, int maxTiles) {
+        super(tileSize);
+        Preconditions.checkArgument(maxTiles > 0, "maxTiles must be positive (is %s)", maxTiles);
+
+        this.hm = hm;
+        this.slots = new TileSlots(maxTiles);
+        this.tiles = new int[maxTiles][];
+    }
+
+    @Override
+    protected int[] getTile(int tx, int tz, int values) {
+        long key = PackedCoordinates.pack(tx, tz);
+        int slot = slots.get(key);
+        recordAccess(slot != TileSlots.NONE, values);
+        if (slot != TileSlots.NONE) {
+            return tiles[slot];
+        }
+
+        slot = slots.claim(key);
+        if (tiles[slot] == null) {
+            tiles[slot] = new int[tileSize * tileSize];
+        }
+
+        try {
+            hm.fill(getTileArea(tx, tz), tiles[slot], 0, tileSize);
+        } catch (RuntimeException e) {
+            slots.remove(key);
+            throw e;
+        }
+        return tiles[slot];
+    }
+
+    @Override
+    public long getSizeInBytes() {
+        // the tile arrays are kept for reuse, even if their slots are free
+        long count = 0;
+        for (int[] tile : tiles) {
+            if (tile != null) {
+                count++;
+            }
+        }
+        return count * tileSize * tileSize * Integer.BYTES;
+    }
+
+    @Override
+    protected void invalidateTiles(int tx0, int tz0, int tx1, int tz1) {
+        // the tile arrays remain in their slots and are reused
+        slots.removeIf(key -> isInRange(key, tx0, tz0, tx1, tz1));
+    }
+}
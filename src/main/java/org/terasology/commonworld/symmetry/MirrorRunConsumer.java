@@ -0,0 +1,25 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.commonworld.symmetry;
+
+/**
+ * Receives horizontal runs of cells together with the positions they are mirrored from.
+ * Cell i of the run (x + i, z) takes its value from (srcX + i * stepX, srcZ + i * stepZ).
+ * For runs that are not mirrored, the source is the run itself with step (1, 0).
+ */
+@FunctionalInterface
+public interface MirrorRunConsumer {
+
+    /**
+     * @param x the x coord of the first cell
+     * @param z the z coord of all cells
+     * @param length the number of cells
+     * @param mirrored true if the cells are on the mirrored part
+     * @param srcX the x coord of the source of the first cell
+     * @param srcZ the z coord of the source of the first cell
+     * @param stepX the x increment of the source per cell
+     * @param stepZ the z increment of the source per cell
+     */
+    void accept(int x, int z, int length, boolean mirrored, int srcX, int srcZ, int stepX, int stepZ);
+}
@@ -17,7 +17,13 @@
 package org.terasology.commonworld.symmetry;
 
 
+import com.google.common.base.Preconditions;
 import org.joml.Vector2i;
+import org.terasology.commonworld.PackedCoordinates;
+import org.terasology.joml.geom.Rectanglei;
+
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntUnaryOperator;
 
 /**
  * Provides access to different symmetries
@@ -43,6 +49,23 @@ public final class Symmetries {
             public Vector2i getMirrored(int x, int z) {
                 return new Vector2i(x, -z - 1);
             }
+
+            @Override
+            public long getMirroredPacked(int x, int z) {
+                return PackedCoordinates.pack(x, -z - 1);
+            }
+
+            @Override
+            public void forEachRun(Rectanglei area, MirrorRunConsumer consumer) {
+                // entire rows are mirrored
+                for (int z = area.minY(); z < area.minY() + area.getSizeY(); z++) {
+                    if (z < 0) {
+                        consumer.accept(area.minX(), z, area.getSizeX(), true, area.minX(), -z - 1, 1, 0);
+                    } else {
+                        consumer.accept(area.minX(), z, area.getSizeX(), false, area.minX(), z, 1, 0);
+                    }
+                }
+            }
         };
     }
 
@@ -61,6 +84,17 @@ public final class Symmetries {
             public Vector2i getMirrored(int x, int z) {
                 return new Vector2i(-x - 1, z);
             }
+
+            @Override
+            public long getMirroredPacked(int x, int z) {
+                return PackedCoordinates.pack(-x - 1, z);
+            }
+
+            @Override
+            public void forEachRun(Rectanglei area, MirrorRunConsumer consumer) {
+                // rows are split at x = 0, the left part is the reversed right part
+                splitRows(area, z -> 0, (x, z) -> -x - 1, (x, z) -> z, -1, 0, true, consumer);
+            }
         };
     }
 
@@ -79,6 +113,17 @@ public final class Symmetries {
             public Vector2i getMirrored(int x, int z) {
                 return new Vector2i(z, x);
             }
+
+            @Override
+            public long getMirroredPacked(int x, int z) {
+                return PackedCoordinates.pack(z, x);
+            }
+
+            @Override
+            public void forEachRun(Rectanglei area, MirrorRunConsumer consumer) {
+                // rows are split at x = z + 1, the right part comes from a column
+                splitRows(area, z -> z + 1, (x, z) -> z, (x, z) -> x, 0, 1, false, consumer);
+            }
         };
     }
 
@@ -98,6 +143,97 @@ public final class Symmetries {
                 int dist = x + z + 1;
                 return new Vector2i(x - dist, z - dist);
             }
+
+            @Override
+            public long getMirroredPacked(int x, int z) {
+                int dist = x + z + 1;
+                return PackedCoordinates.pack(x - dist, z - dist);
+            }
+
+            @Override
+            public void forEachRun(Rectanglei area, MirrorRunConsumer consumer) {
+                // rows are split at x = -z, the left part comes from a column (upwards)
+                splitRows(area, z -> -z, (x, z) -> -z - 1, (x, z) -> -x - 1, 0, -1, true, consumer);
+            }
         };
     }
+
+    /**
+     * Combines the mirrors {@link #alongX()} and {@link #alongZ()}.
+     * The canonical domain is the quadrant x &gt;= 0, z &gt;= 0.
+     * @return a symmetry with four mirrored quadrants
+     */
+    public static Symmetry twoMirrors() {
+        int[] group = {0, TableSymmetry.NEG_U, TableSymmetry.NEG_V, TableSymmetry.NEG_U | TableSymmetry.NEG_V};
+        return new TableSymmetry(group, octants(0, 4));
+    }
+
+    /**
+     * Creates a rotational symmetry around the point (-0.5, -0.5). The canonical domain is
+     * the half plane z &gt;= 0 for two-fold and the quadrant x &gt;= 0, z &gt;= 0 for four-fold symmetry.
+     * @param folds the number of rotations (2 or 4)
+     * @return a symmetry that consists of rotations by 180 or 90 degrees
+     */
+    public static Symmetry rotational(int folds) {
+        Preconditions.checkArgument(folds == 2 || folds == 4, "only 2-fold and 4-fold rotations are supported (not %s)", folds);
+        int half = TableSymmetry.NEG_U | TableSymmetry.NEG_V;
+        if (folds == 2) {
+            return new TableSymmetry(new int[] {0, half}, octants(0, 1, 4, 5));
+        }
+        int quarter = TableSymmetry.SWAP | TableSymmetry.NEG_U;
+        int threeQuarters = TableSymmetry.SWAP | TableSymmetry.NEG_V;
+        return new TableSymmetry(new int[] {0, quarter, half, threeQuarters}, octants(0, 4));
+    }
+
+    /**
+     * Combines the mirrors {@link #alongX()}, {@link #alongZ()} and {@link #alongPositiveDiagonal()}.
+     * The canonical domain is the wedge 0 &lt;= x &lt;= z.
+     * @return a symmetry with eight mirrored wedges
+     */
+    public static Symmetry kaleidoscope() {
+        return new TableSymmetry(new int[] {0, 1, 2, 3, 4, 5, 6, 7}, octants(0));
+    }
+
+    private static int octants(int... indices) {
+        int mask = 0;
+        for (int index : indices) {
+            mask |= 1 << index;
+        }
+        return mask;
+    }
+
+    /**
+     * Splits every row of the area at a single position into a mirrored and a non-mirrored run.
+     * @param area the area
+     * @param split the first x coord of the right part per row
+     * @param srcX the x coord of the source of the mirrored cell (x, z)
+     * @param srcZ the z coord of the source of the mirrored cell (x, z)
+     * @param stepX the x increment of the source per cell
+     * @param stepZ the z increment of the source per cell
+     * @param leftMirrored true if the left part is mirrored, false if the right part is
+     * @param consumer the run consumer
+     */
+    private static void splitRows(Rectanglei area, IntUnaryOperator split, IntBinaryOperator srcX, IntBinaryOperator srcZ,
+                                  int stepX, int stepZ, boolean leftMirrored, MirrorRunConsumer consumer) {
+        int minX = area.minX();
+        int maxX = area.minX() + area.getSizeX();
+        for (int z = area.minY(); z < area.minY() + area.getSizeY(); z++) {
+            int mid = Math.max(minX, Math.min(maxX, split.applyAsInt(z)));
+            if (mid > minX) {
+                emit(minX, z, mid - minX, leftMirrored, srcX, srcZ, stepX, stepZ, consumer);
+            }
+            if (maxX > mid) {
+                emit(mid, z, maxX - mid, !leftMirrored, srcX, srcZ, stepX, stepZ, consumer);
+            }
+        }
+    }
+
+    private static void emit(int x, int z, int length, boolean mirrored, IntBinaryOperator srcX, IntBinaryOperator srcZ,
+                             int stepX, int stepZ, MirrorRunConsumer consumer) {
+        if (mirrored) {
+            consumer.accept(x, z, length, true, srcX.applyAsInt(x, z), srcZ.applyAsInt(x, z), stepX, stepZ);
+        } else {
+            consumer.accept(x, z, length, false, x, z, 1, 0);
+        }
+    }
 }
@@ -19,9 +19,14 @@ package org.terasology.commonworld.symmetry;
 
 import org.joml.Vector2i;
 import org.joml.Vector2ic;
+import org.terasology.commonworld.PackedCoordinates;
+import org.terasology.joml.geom.Rectanglei;
 
 /**
- * Defines a symmetry
+ * Defines a symmetry. Positions on the mirrored part take their value from a counterpart on the
+ * non-mirrored part, which is returned by {@link #getMirrored(int, int)}. The result is only defined
+ * for mirrored positions: single mirrors also reflect non-mirrored positions (the mapping is its own inverse),
+ * while composite symmetries (see {@link Symmetries#twoMirrors()}) map them onto themselves.
  */
 public interface Symmetry {
 
@@ -39,16 +44,85 @@ public interface Symmetry {
     boolean isMirrored(int x, int z);
 
     /**
-     * @param sc the position coordinates
-     * @return the mirrored position
+     * @param sc the position coordinates - it should be on the mirrored part
+     * @return the non-mirrored counterpart of the position
      */
     Vector2i getMirrored(Vector2ic sc);
 
     /**
+     * @param x the x position coordinate - the position should be on the mirrored part
+     * @param z the z position coordinate - the position should be on the mirrored part
+     * @return the non-mirrored counterpart of the position
+     */
+    Vector2i getMirrored(int x, int z);
+
+    /**
+     * Returns the non-mirrored counterpart without allocating a vector (see {@link #getMirrored(int, int)}).
      * @param x the x position coordinate
      * @param z the z position coordinate
-     * @return the mirrored position
+     * @return the mirrored position, packed through {@link PackedCoordinates#pack(int, int)}
      */
-    Vector2i getMirrored(int x, int z);
+    default long getMirroredPacked(int x, int z) {
+        Vector2i mirrored = getMirrored(x, z);
+        return PackedCoordinates.pack(mirrored.x(), mirrored.y());
+    }
+
+    /**
+     * Writes the non-mirrored counterpart into the given vector instead of allocating a new one
+     * (see {@link #getMirrored(int, int)}).
+     * @param x the x position coordinate
+     * @param z the z position coordinate
+     * @param dest the target vector
+     * @return dest
+     */
+    default Vector2i getMirrored(int x, int z, Vector2i dest) {
+        long mirrored = getMirroredPacked(x, z);
+        return dest.set(PackedCoordinates.unpackX(mirrored), PackedCoordinates.unpackZ(mirrored));
+    }
+
+    /**
+     * Splits every row of the area into runs of cells that are either not mirrored or
+     * mirrored from positions along a straight line. Implementations should return as few runs as possible.
+     * The default implementation follows the mirrored positions cell by cell.
+     * @param area the area to split
+     * @param consumer receives the runs in row-major order
+     */
+    default void forEachRun(Rectanglei area, MirrorRunConsumer consumer) {
+        int maxX = area.minX() + area.getSizeX();
+        for (int z = area.minY(); z < area.minY() + area.getSizeY(); z++) {
+            int x = area.minX();
+            while (x < maxX) {
+                int start = x;
+                if (!isMirrored(x, z)) {
+                    while (x < maxX && !isMirrored(x, z)) {
+                        x++;
+                    }
+                    consumer.accept(start, z, x - start, false, start, z, 1, 0);
+                } else {
+                    long first = getMirroredPacked(x, z);
+                    int srcX = PackedCoordinates.unpackX(first);
+                    int srcZ = PackedCoordinates.unpackZ(first);
+                    int stepX = 1;
+                    int stepZ = 0;
+                    x++;
+                    if (x < maxX && isMirrored(x, z)) {
+                        long second = getMirroredPacked(x, z);
+                        stepX = PackedCoordinates.unpackX(second) - srcX;
+                        stepZ = PackedCoordinates.unpackZ(second) - srcZ;
+                        x++;
+                        // extend the run as long as the source positions stay on the same line
+                        while (x < maxX && isMirrored(x, z)) {
+                            int i = x - start;
+                            if (getMirroredPacked(x, z) != PackedCoordinates.pack(srcX + i * stepX, srcZ + i * stepZ)) {
+                                break;
+                            }
+                            x++;
+                        }
+                    }
+                    consumer.accept(start, z, x - start, true, srcX, srcZ, stepX, stepZ);
+                }
+            }
+        }
+    }
 
 }
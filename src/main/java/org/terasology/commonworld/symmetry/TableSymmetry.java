@@ -0,0 +1,127 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.commonworld.symmetry;
+
+import com.google.common.base.Preconditions;
+import org.joml.Vector2i;
+import org.terasology.commonworld.PackedCoordinates;
+import org.terasology.joml.geom.Rectanglei;
+
+/**
+ * A symmetry that is composed of several mirrors and/or rotations around the point (-0.5, -0.5).
+ * In doubled coordinates u = 2x + 1 and v = 2z + 1, all of these transformations swap and/or negate u and v.
+ * The plane is split into eight octants (by the signs of u and v and by |u| &gt; |v|). A table
+ * contains the transformation that maps each octant onto the canonical domain, so every cell is mapped
+ * in a single step, regardless of the number of combined symmetries. Cells in the canonical domain are
+ * not mirrored; {@link #getMirrored(int, int)} maps all others onto the canonical domain.
+ * Unlike a single mirror, there is no unique opposite cell, so canonical cells are mapped onto themselves.
+ */
+final class TableSymmetry extends AbstractSymmetry {
+
+    /**
+     * Transformation bits - swap u and v first, then negate u and/or v
+     */
+    static final int SWAP = 1;
+    static final int NEG_U = 2;
+    static final int NEG_V = 4;
+
+    private final int[] table = new int[8];
+
+    /**
+     * @param group all transformations of the symmetry group (including the identity)
+     * @param domain the octants that form the canonical domain (as bit mask of octant indices)
+     */
+    TableSymmetry(int[] group, int domain) {
+        for (int octant = 0; octant < 8; octant++) {
+            // a point in the interior of the octant
+            long u = ((octant & 4) != 0) ? 3 : 1;
+            long v = ((octant & 4) != 0) ? 1 : 3;
+            u = ((octant & 1) != 0) ? -u : u;
+            v = ((octant & 2) != 0) ? -v : v;
+
+            table[octant] = -1;
+            for (int t : group) {
+                long tu = transformU(t, u, v);
+                long tv = transformV(t, u, v);
+                if ((domain & (1 << octant(tu, tv))) != 0) {
+                    table[octant] = t;
+                    break;
+                }
+            }
+            Preconditions.checkArgument(table[octant] >= 0, "octant %s cannot be mapped onto the domain", octant);
+        }
+    }
+
+    @Override
+    public boolean isMirrored(int x, int z) {
+        return table[octant(2L * x + 1, 2L * z + 1)] != 0;
+    }
+
+    @Override
+    public Vector2i getMirrored(int x, int z) {
+        long mirrored = getMirroredPacked(x, z);
+        return new Vector2i(PackedCoordinates.unpackX(mirrored), PackedCoordinates.unpackZ(mirrored));
+    }
+
+    @Override
+    public long getMirroredPacked(int x, int z) {
+        long u = 2L * x + 1;
+        long v = 2L * z + 1;
+        int t = table[octant(u, v)];
+        return PackedCoordinates.pack((int) ((transformU(t, u, v) - 1) >> 1), (int) ((transformV(t, u, v) - 1) >> 1));
+    }
+
+    @Override
+    public void forEachRun(Rectanglei area, MirrorRunConsumer consumer) {
+        int minX = area.minX();
+        int maxX = area.minX() + area.getSizeX();
+        for (int z = area.minY(); z < area.minY() + area.getSizeY(); z++) {
+            // the octant changes only at x = 0 and where |2x + 1| exceeds |2z + 1|
+            long a = Math.abs(2L * z + 1);
+            long innerStart = (-a - 1) / 2;
+            long innerEnd = (a - 1) / 2 + 1;
+            long[] cuts = {minX, clamp(innerStart, minX, maxX), clamp(0, minX, maxX), clamp(innerEnd, minX, maxX), maxX};
+            for (int i = 0; i + 1 < cuts.length; i++) {
+                int x0 = (int) cuts[i];
+                int x1 = (int) cuts[i + 1];
+                if (x1 > x0) {
+                    emit(x0, z, x1 - x0, consumer);
+                }
+            }
+        }
+    }
+
+    private void emit(int x, int z, int length, MirrorRunConsumer consumer) {
+        int t = table[octant(2L * x + 1, 2L * z + 1)];
+        if (t == 0) {
+            consumer.accept(x, z, length, false, x, z, 1, 0);
+            return;
+        }
+        long mirrored = getMirroredPacked(x, z);
+        // a step of 2 along u is transformed like the point (2, 0), halved
+        int stepX = (int) (transformU(t, 2, 0) / 2);
+        int stepZ = (int) (transformV(t, 2, 0) / 2);
+        int srcX = PackedCoordinates.unpackX(mirrored);
+        int srcZ = PackedCoordinates.unpackZ(mirrored);
+        consumer.accept(x, z, length, true, srcX, srcZ, stepX, stepZ);
+    }
+
+    private static long clamp(long value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    private static int octant(long u, long v) {
+        return (u < 0 ? 1 : 0) | (v < 0 ? 2 : 0) | (Math.abs(u) > Math.abs(v) ? 4 : 0);
+    }
+
+    private static long transformU(int t, long u, long v) {
+        long r = ((t & SWAP) != 0) ? v : u;
+        return ((t & NEG_U) != 0) ? -r : r;
+    }
+
+    private static long transformV(int t, long u, long v) {
+        long r = ((t & SWAP) != 0) ? u : v;
+        return ((t & NEG_V) != 0) ? -r : r;
+    }
+}
@@ -9,6 +9,7 @@ import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.terasology.commonworld.heightmap.ConvertingHeightMap;
+import org.terasology.commonworld.heightmap.HeightConverter;
 import org.terasology.commonworld.heightmap.HeightMaps;
 
 import java.awt.Point;
@@ -30,6 +31,7 @@ public class ContourTracingTest {
      * Tests contour tracing
      */
     @Test
+    @SuppressWarnings("deprecation")
     public void test() {
 
         List<String> data = Arrays.asList(
@@ -77,6 +79,43 @@ public class ContourTracingTest {
         }
     }
 
+    /**
+     * Tests that a {@link HeightConverter} yields the same contours as a converter that is extended step by step
+     */
+    @Test
+    public void testConverter() {
+        List<String> data = Arrays.asList(
+                "         ",
+                "  XXXX   ",
+                " XX  XX  ",
+                "  XXXX   ",
+                "         ");
+
+        int width = data.get(0).length();
+        int height = data.size();
+        Rectangle rc = new Rectangle(0, 0, width, height);
+
+        HeightConverter extended = HeightConverter.identity().toBuilder().add('X', 0).build();
+        extended = extended.toBuilder().add(' ', 10).build();
+        ConvertingHeightMap single = new ConvertingHeightMap(HeightMaps.stringBased(data), extended);
+
+        HeightConverter converter = HeightConverter.builder()
+                .add('X', 0)
+                .add(' ', 10)
+                .build();
+        ConvertingHeightMap built = new ConvertingHeightMap(HeightMaps.stringBased(data), converter);
+
+        assertEquals(trace(single, rc), trace(built, rc));
+    }
+
+    private List<String> trace(ConvertingHeightMap hm, Rectangle rc) {
+        ContourTracer ct = new ContourTracer(hm, rc, 5);
+        List<Contour> all = Lists.newArrayList();
+        all.addAll(ct.getOuterContours());
+        all.addAll(ct.getInnerContours());
+        return drawContour(all, rc.width, rc.height);
+    }
+
     /**
      * Some simple tests on curve simplification
      */
@@ -0,0 +1,187 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.commonworld.heightmap;
+
+import org.junit.jupiter.api.Test;
+import org.terasology.joml.geom.Rectanglei;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the area-based caching height maps
+ */
+public class CachingHeightMapTest {
+
+    private final HeightMap base = new NoiseHeightMap(4711);
+
+    private final Rectanglei area = new Rectanglei(-100, -60, 156, 140);
+
+    @Test
+    public void parallelIdenticalTest() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (int scale : new int[] {1, 4, 7}) {
+                HeightMap sequential = HeightMaps.caching(base, area, scale);
+                HeightMap parallel = HeightMaps.cachingAsync(base, area, scale, executor).get();
+                assertSameContent(sequential, parallel, area);
+                assertSameContent(sequential, HeightMaps.cachingParallel(base, area, scale), area);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void lerpReferenceTest() {
+        HeightMap hm = (x, z) -> (x * x + 3 * z) % 97;
+        // multiples of 10 are excluded: the double-based reference is subject to rounding on exact ties there
+        for (int scale : new int[] {2, 3, 4, 8, 12}) {
+            HeightMap cache = HeightMaps.caching(hm, area, scale);
+            for (int z = area.minY(); z < area.maxY(); z++) {
+                for (int x = area.minX(); x < area.maxX(); x++) {
+                    assertEquals(referenceLerp(hm, scale, x, z), cache.apply(x, z));
+                }
+            }
+        }
+    }
+
+    private int referenceLerp(HeightMap hm, int scale, int x, int z) {
+        int lx = x - area.minX();
+        int lz = z - area.minY();
+        int cx = area.minX() + lx / scale * scale;
+        int cz = area.minY() + lz / scale * scale;
+        double ipx = (lx % scale) / (double) scale;
+        double ipz = (lz % scale) / (double) scale;
+        double min = hm.apply(cx, cz) * (1 - ipx) + hm.apply(cx + scale, cz) * ipx;
+        double max = hm.apply(cx, cz + scale) * (1 - ipx) + hm.apply(cx + scale, cz + scale) * ipx;
+        return (int) Math.floor(min * (1 - ipz) + max * ipz + 0.49);
+    }
+
+    @Test
+    public void cubicTest() {
+        // Catmull-Rom splines reproduce quadratic polynomials exactly (up to rounding)
+        HeightMap cache = HeightMaps.cachingCubic((x, z) -> x * x + 2 * z * z - x * z, area, 16);
+        for (int z = area.minY(); z <= area.maxY(); z++) {
+            for (int x = area.minX(); x <= area.maxX(); x++) {
+                int expected = x * x + 2 * z * z - x * z;
+                assertTrue(Math.abs(expected - cache.apply(x, z)) <= 1);
+            }
+        }
+    }
+
+    @Test
+    public void adaptiveFlatTest() {
+        HeightMap linear = (x, z) -> 2 * x - 3 * z;
+        AdaptiveCachingHeightMap cache = new AdaptiveCachingHeightMap(area, linear, 64, 0);
+        assertSameContent(linear, cache, area);
+
+        // 4 x 4 root cells that are never refined
+        assertEquals(16, cache.getNodeCount());
+        assertEquals(0, cache.getTileDataSize());
+        assertTrue(cache.getSampleCount() < 100);
+    }
+
+    @Test
+    public void adaptiveRuggedTest() {
+        Random r = new Random(99);
+        int[] noise = new int[area.getSizeX() * area.getSizeY()];
+        for (int i = 0; i < noise.length; i++) {
+            noise[i] = r.nextInt(50);
+        }
+        HeightMap rugged = (x, z) -> {
+            int lx = Math.floorMod(x - area.minX(), area.getSizeX());
+            int lz = Math.floorMod(z - area.minY(), area.getSizeY());
+            return noise[lz * area.getSizeX() + lx];
+        };
+
+        // a tolerance of zero makes the cache exact
+        AdaptiveCachingHeightMap cache = new AdaptiveCachingHeightMap(area, rugged, 16, 0);
+        assertSameContent(rugged, cache, area);
+
+        // refining random noise is more expensive than storing the plain heights
+        // tiles at the edge cover whole root cells, so the area height is rounded up to 13 * 16 rows
+        int cells = area.getSizeX() * area.getSizeY();
+        assertEquals(area.getSizeX() * 13 * 16, cache.getTileDataSize());
+        assertTrue(cache.getNodeCount() * 5 < cells / 10);
+    }
+
+    @Test
+    public void adaptiveToleranceTest() {
+        HeightMap smooth = (x, z) -> (int) (40 * Math.sin(x / 50.0) * Math.cos(z / 30.0));
+        AdaptiveCachingHeightMap cache = new AdaptiveCachingHeightMap(area, smooth, 32, 2);
+        // the tolerance is tested at the probe points only - allow one block of slack in between
+        for (int z = area.minY(); z < area.maxY(); z++) {
+            for (int x = area.minX(); x < area.maxX(); x++) {
+                assertTrue(Math.abs(smooth.apply(x, z) - cache.apply(x, z)) <= 3);
+            }
+        }
+        assertTrue(cache.getSampleCount() < area.getSizeX() * area.getSizeY() / 4);
+        long plainInts = (long) area.getSizeX() * area.getSizeY();
+        assertTrue(cache.getNodeCount() * 5L + cache.getTileDataSize() < plainInts / 4);
+    }
+
+    @Test
+    public void sampledNoiseTest() {
+        NoiseHeightMap noise = new NoiseHeightMap(4711);
+        int spacing = noise.getSampleSpacing(1);
+        assertTrue(Integer.bitCount(spacing) == 1);
+        assertTrue(spacing <= noise.getSampleSpacing(3));
+
+        HeightMap sampled = HeightMaps.sampled(noise, area, 1);
+        assertSameContent(HeightMaps.caching(noise, area, spacing), sampled, area);
+    }
+
+    @Test
+    public void largeValuesTest() {
+        HeightMap steep = (x, z) -> x * 100000 + z;
+        HeightMap cache = HeightMaps.caching(steep, area, 1);
+        assertSameContent(steep, cache, area);
+    }
+
+    @Test
+    public void packedTileTest() {
+        Random r = new Random(1234);
+        for (int bits = 0; bits <= 32; bits++) {
+            int[] values = new int[100];
+            int base = r.nextInt();
+            for (int i = 0; i < values.length; i++) {
+                values[i] = bits == 0 ? base : (bits == 32 ? r.nextInt() : base + r.nextInt(1 << (bits - 1)) * 2);
+            }
+            PackedHeightTile tile = new PackedHeightTile(values, 0, values.length);
+            int[] copy = new int[values.length];
+            tile.get(0, copy, 0, values.length);
+            assertArrayEquals(values, copy);
+            for (int i = 0; i < values.length; i++) {
+                assertEquals(values[i], tile.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void packedTileSizeTest() {
+        int[] values = new int[64 * 64];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 40 + i % 64;
+        }
+        PackedHeightTile tile = new PackedHeightTile(values, 0, values.length);
+        assertEquals(6, tile.getBitsPerValue());
+        assertEquals(64 * 64 * 6 / 8, tile.getSizeInBytes());
+
+        assertEquals(0, new PackedHeightTile(new int[] {5, 5, 5}, 0, 3).getBitsPerValue());
+    }
+
+    private static void assertSameContent(HeightMap expected, HeightMap actual, Rectanglei rc) {
+        for (int z = rc.minY(); z < rc.maxY(); z++) {
+            for (int x = rc.minX(); x < rc.maxX(); x++) {
+                assertEquals(expected.apply(x, z), actual.apply(x, z));
+            }
+        }
+    }
+}
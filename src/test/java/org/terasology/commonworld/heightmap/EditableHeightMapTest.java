@@ -0,0 +1,99 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.commonworld.heightmap;
+
+import org.junit.jupiter.api.Test;
+import org.terasology.joml.geom.Rectanglei;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests {@link EditableHeightMap} and the invalidation of dependent caches
+ */
+public class EditableHeightMapTest {
+
+    private final HeightMap base = (x, z) -> x * 7 - z * 3;
+
+    @Test
+    public void editTest() {
+        EditableHeightMap hm = new EditableHeightMap(base);
+        hm.set(3, 4, 100);
+        hm.setArea(new Rectanglei(10, 10, 15, 12), -5);
+
+        assertEquals(100, hm.apply(3, 4));
+        assertEquals(-5, hm.apply(14, 11));
+        assertEquals(base.apply(15, 11), hm.apply(15, 11));
+
+        Rectanglei area = new Rectanglei(0, 0, 20, 20);
+        int[] dest = new int[20 * 20];
+        hm.fill(area, dest, 0, 20);
+        for (int z = 0; z < 20; z++) {
+            for (int x = 0; x < 20; x++) {
+                assertEquals(hm.apply(x, z), dest[z * 20 + x]);
+            }
+        }
+    }
+
+    @Test
+    public void dirtyRegionTest() {
+        EditableHeightMap hm = new EditableHeightMap(base);
+        hm.set(3, 4, 1);
+        hm.set(4, 4, 1);
+        hm.set(50, 50, 1);
+
+        List<Rectanglei> dirty = hm.getDirtyRegions();
+        assertEquals(2, dirty.size());
+        assertEquals(new Rectanglei(3, 4, 5, 5), dirty.get(0));
+        assertEquals(new Rectanglei(50, 50, 51, 51), dirty.get(1));
+
+        hm.flush();
+        assertEquals(0, hm.getDirtyRegions().size());
+    }
+
+    @Test
+    public void invalidationTest() {
+        EditableHeightMap hm = new EditableHeightMap(base);
+        Rectanglei area = new Rectanglei(-40, -30, 160, 130);
+        List<HeightMap> caches = Arrays.asList(
+                HeightMaps.caching(hm, area, 1),
+                HeightMaps.caching(hm, area, 4),
+                HeightMaps.cachingCubic(hm, area, 4),
+                HeightMaps.tiledCache(hm, 16, 64),
+                HeightMaps.concurrentTiledCache(hm, 16, 64));
+
+        for (HeightMap cache : caches) {
+            cache.apply(0, 0);
+            hm.addDependent(cache);
+        }
+
+        hm.setArea(new Rectanglei(20, 20, 33, 29), 500);
+        hm.set(100, -12, -80);
+        hm.flush();
+
+        List<HeightMap> fresh = Arrays.asList(
+                HeightMaps.caching(hm, area, 1),
+                HeightMaps.caching(hm, area, 4),
+                HeightMaps.cachingCubic(hm, area, 4),
+                hm,
+                hm);
+
+        for (int i = 0; i < caches.size(); i++) {
+            for (int z = area.minY(); z < area.maxY(); z++) {
+                for (int x = area.minX(); x < area.maxX(); x++) {
+                    assertEquals(fresh.get(i).apply(x, z), caches.get(i).apply(x, z), "cache " + i + " at " + x + "/" + z);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void unsupportedDependentTest() {
+        EditableHeightMap hm = new EditableHeightMap(base);
+        assertThrows(IllegalArgumentException.class, () -> hm.addDependent(HeightMaps.offset(hm, 1)));
+    }
+}
@@ -0,0 +1,81 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.commonworld.heightmap;
+
+import org.junit.jupiter.api.Test;
+import org.terasology.commonworld.heightmap.HeightGraph.Node;
+import org.terasology.commonworld.symmetry.Symmetries;
+import org.terasology.joml.geom.Rectanglei;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests {@link HeightGraph}
+ */
+public class HeightGraphTest {
+
+    private final AtomicInteger evaluations = new AtomicInteger();
+
+    private final HeightMap base = (x, z) -> {
+        evaluations.incrementAndGet();
+        return (x * 7 - z * 3) % 50;
+    };
+
+    @Test
+    public void valuesTest() {
+        Node src = HeightGraph.source(base);
+        Node[] outputs = {
+            HeightGraph.threshold(src, 10, 0, 1),
+            HeightGraph.offset(src, 5),
+            HeightGraph.scale(src, -2),
+            HeightGraph.min(src, HeightGraph.source(HeightMaps.constant(3))),
+            HeightGraph.max(src, HeightGraph.source(HeightMaps.constant(3))),
+            HeightGraph.add(src, HeightGraph.offset(src, 1)),
+            HeightGraph.blend(src, HeightGraph.scale(src, 3), 1, 4),
+            HeightGraph.symmetric(HeightGraph.offset(src, 2), Symmetries.alongNegativeDiagonal()),
+            HeightGraph.scalingArea(src, 3)
+        };
+
+        Rectanglei area = new Rectanglei(-70, -20, 90, 75);
+        int[][] results = HeightGraph.evaluate(area, outputs);
+        for (int i = 0; i < outputs.length; i++) {
+            int idx = 0;
+            for (int z = area.minY(); z < area.maxY(); z++) {
+                for (int x = area.minX(); x < area.maxX(); x++) {
+                    assertEquals(outputs[i].apply(x, z), results[i][idx++], "output " + i + " at " + x + "/" + z);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void sharedSubexpressionTest() {
+        Node src = HeightGraph.source(base);
+        Node shifted = HeightGraph.offset(src, 3);
+        Node a = HeightGraph.threshold(shifted, 10, 0, 1);
+        Node b = HeightGraph.max(shifted, src);
+        Node c = HeightGraph.add(a, b);
+
+        Rectanglei area = new Rectanglei(0, 0, 100, 70);
+        HeightGraph.evaluate(area, a, b, c, shifted);
+        assertEquals(area.getSizeX() * area.getSizeY(), evaluations.get());
+    }
+
+    @Test
+    public void fillTest() {
+        Node src = HeightGraph.source(base);
+        Node hm = HeightGraph.add(src, src);
+
+        Rectanglei area = new Rectanglei(5, 5, 20, 12);
+        int[] dest = new int[2 + 17 * area.getSizeY()];
+        hm.fill(area, dest, 2, 17);
+        for (int z = area.minY(); z < area.maxY(); z++) {
+            for (int x = area.minX(); x < area.maxX(); x++) {
+                assertEquals(2 * base.apply(x, z), dest[2 + (z - area.minY()) * 17 + x - area.minX()]);
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.commonworld.heightmap;
+
+import org.junit.jupiter.api.Test;
+import org.terasology.commonworld.array.Arrays2D;
+import org.terasology.commonworld.array.IntArray2D;
+import org.terasology.commonworld.symmetry.Symmetries;
+import org.terasology.joml.geom.Rectanglei;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests that {@link HeightMap#fill(Rectanglei, int[], int, int)} matches per-cell access
+ */
+public class HeightMapFillTest {
+
+    private final HeightMap base = (x, z) -> (x * 31 + z * 17) % 23 + (x ^ z) % 5;
+
+    @Test
+    public void noiseTest() {
+        assertFillMatches(new NoiseHeightMap(12345));
+    }
+
+    @Test
+    public void constantTest() {
+        assertFillMatches(HeightMaps.constant(42));
+    }
+
+    @Test
+    public void offsetAndScalingTest() {
+        assertFillMatches(HeightMaps.offset(base, 7));
+        assertFillMatches(HeightMaps.scalingHeight(base, 3));
+        assertFillMatches(HeightMaps.scalingArea(base, 2));
+        assertFillMatches(HeightMaps.scalingArea(new NoiseHeightMap(12345), 3));
+    }
+
+    @Test
+    public void cachingTest() {
+        Rectanglei area = new Rectanglei(-20, -20, 40, 40);
+        assertFillMatches(HeightMaps.caching(base, area, 1));
+        assertFillMatches(HeightMaps.caching(base, area, 4));
+        assertFillMatches(HeightMaps.cachingCubic(base, area, 8));
+    }
+
+    @Test
+    public void symmetricTest() {
+        assertFillMatches(HeightMaps.symmetric(base, Symmetries.alongX()));
+        assertFillMatches(HeightMaps.symmetric(base, Symmetries.alongZ()));
+        assertFillMatches(HeightMaps.symmetric(base, Symmetries.alongPositiveDiagonal()));
+        assertFillMatches(HeightMaps.symmetric(base, Symmetries.alongNegativeDiagonal()));
+    }
+
+    @Test
+    public void arrayTest() {
+        IntArray2D array = Arrays2D.create(7, 5, 0, (byte) 0);
+        for (int z = 0; z < 5; z++) {
+            for (int x = 0; x < 7; x++) {
+                array.set(x, z, x * z);
+            }
+        }
+        assertFillMatches(HeightMaps.fromArray2D(array));
+    }
+
+    @Test
+    public void stringTest() {
+        HeightMap hm = HeightMaps.stringBased(Arrays.asList("abcdef", "ghijkl", "mnopqr"));
+        assertFillMatches(hm, new Rectanglei(1, 0, 5, 3));
+    }
+
+    @Test
+    public void convertingTest() {
+        HeightConverter dense = HeightConverter.builder().add(3, 100).add(7, -4).build();
+        assertFillMatches(new ConvertingHeightMap(base, dense));
+
+        HeightConverter sparse = HeightConverter.builder().add(3, 100).add(1 << 20, 5).add(-1 << 20, 6).build();
+        assertFillMatches(new ConvertingHeightMap(base, sparse));
+    }
+
+    private void assertFillMatches(HeightMap hm) {
+        // covers both the cached area and its outside
+        assertFillMatches(hm, new Rectanglei(-10, -5, 22, 19));
+        assertFillMatches(hm, new Rectanglei(30, 25, 50, 45));
+    }
+
+    private void assertFillMatches(HeightMap hm, Rectanglei area) {
+        int offset = 3;
+        int stride = area.getSizeX() + 2;
+        int[] dest = new int[offset + stride * area.getSizeY()];
+        hm.fill(area, dest, offset, stride);
+
+        for (int z = area.minY(); z < area.maxY(); z++) {
+            for (int x = area.minX(); x < area.maxX(); x++) {
+                int idx = offset + (z - area.minY()) * stride + (x - area.minX());
+                assertEquals(hm.apply(x, z), dest[idx]);
+            }
+        }
+    }
+}
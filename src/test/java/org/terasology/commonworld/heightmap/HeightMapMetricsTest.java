@@ -0,0 +1,109 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.commonworld.heightmap;
+
+import org.junit.jupiter.api.Test;
+import org.terasology.joml.geom.Rectanglei;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests {@link HeightMaps#instrumented(HeightMap, String)} and {@link HeightMapMetrics}
+ */
+public class HeightMapMetricsTest {
+
+    @Test
+    public void callCountTest() {
+        HeightMap base = (x, z) -> x * 3 - z;
+        HeightMap hm = HeightMaps.instrumented(base, "test.base");
+        HeightMapStats stats = HeightMapMetrics.get("test.base");
+
+        assertEquals(base.apply(4, 7), hm.apply(4, 7));
+        hm.apply(5, 7);
+        int[] dest = new int[16];
+        hm.fill(new Rectanglei(0, 0, 4, 4), dest, 0, 4);
+        assertEquals(base.apply(3, 2), dest[2 * 4 + 3]);
+
+        assertEquals(2, stats.getCalls());
+        assertEquals(1, stats.getFills());
+        assertTrue(stats.getCallNanos() >= 0);
+        assertTrue(Double.isNaN(stats.getHitRatio()));
+
+        HeightMapMetrics.resetAll();
+        assertEquals(0, stats.getCalls());
+        assertEquals(0, stats.getFills());
+
+        HeightMapMetrics.unregister("test.base");
+        assertNull(HeightMapMetrics.get("test.base"));
+    }
+
+    @Test
+    public void nameCollisionTest() {
+        HeightMap base = (x, z) -> x;
+        HeightMap hm = HeightMaps.instrumented(base, "test.name");
+        HeightMapStats stats = HeightMapMetrics.get("test.name");
+
+        // the first layer is still in use, so its counters must not be replaced
+        assertThrows(IllegalArgumentException.class, () -> HeightMaps.instrumented(base, "test.name"));
+        assertSame(stats, HeightMapMetrics.get("test.name"));
+        hm.apply(1, 2);
+        assertEquals(1, stats.getCalls());
+
+        HeightMapMetrics.unregister("test.name");
+        HeightMaps.instrumented(base, "test.name");
+        assertEquals(0, HeightMapMetrics.get("test.name").getCalls());
+        HeightMapMetrics.unregister("test.name");
+    }
+
+    @Test
+    public void cacheCountTest() {
+        Rectanglei area = new Rectanglei(0, 0, 100, 100);
+        HeightMap cache = HeightMaps.caching((x, z) -> x + z, area, 1);
+        HeightMap hm = HeightMaps.instrumented(cache, "test.cache");
+        HeightMapStats stats = HeightMapMetrics.get("test.cache");
+        assertSame(stats, HeightMapMetrics.getAll().get("test.cache"));
+        assertTrue(stats.getBytes() > 0);
+
+        hm.apply(10, 10);
+        hm.apply(20, 30);
+        hm.apply(-5, 10);
+        hm.fill(new Rectanglei(0, 0, 8, 8), new int[64], 0, 8);
+
+        assertEquals(3, stats.getCalls());
+        assertEquals(66, stats.getHits());
+        assertEquals(1, stats.getFallbacks());
+        assertEquals(66 / 67.0, stats.getHitRatio(), 1e-9);
+
+        HeightMapMetrics.unregister("test.cache");
+    }
+
+    @Test
+    public void tileCountTest() {
+        HeightMap cache = HeightMaps.tiledCache((x, z) -> x * z, 16, 2);
+        HeightMap hm = HeightMaps.instrumented(cache, "test.tiles");
+        HeightMapStats stats = HeightMapMetrics.get("test.tiles");
+
+        hm.apply(1, 1);
+        hm.apply(2, 2);
+        hm.apply(17, 1);
+        hm.apply(33, 1);
+        hm.apply(18, 5);
+
+        assertEquals(2, stats.getHits());
+        assertEquals(3, stats.getMisses());
+        assertEquals(0, stats.getFallbacks());
+        assertEquals(2 * 16 * 16 * Integer.BYTES, stats.getBytes());
+
+        // all counters count values, also for bulk requests
+        hm.fill(new Rectanglei(0, 0, 32, 8), new int[256], 0, 32);
+        assertEquals(2 + 128, stats.getHits());
+        assertEquals(3 + 128, stats.getMisses());
+
+        HeightMapMetrics.unregister("test.tiles");
+    }
+}
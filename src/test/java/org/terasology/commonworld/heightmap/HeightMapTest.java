@@ -9,8 +9,11 @@ import org.terasology.commonworld.symmetry.Symmetries;
 import org.terasology.commonworld.symmetry.Symmetry;
 
 import java.util.Random;
+import java.util.function.IntBinaryOperator;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
@@ -56,6 +59,90 @@ public class HeightMapTest {
         assertEquals(new Vector2i(9, 9), sym.getMirrored(new Vector2i(-10, -10)));
     }
 
+    @Test
+    public void primitiveAdapterTest() {
+        HeightMap hm = (x, z) -> x * 3 - z;
+        IntBinaryOperator op = hm;
+
+        assertSame(hm, HeightMaps.fromOperator(op));
+        assertEquals(hm.apply(5, 7), op.applyAsInt(5, 7));
+        assertEquals(hm.apply(5, 7), hm.apply(new Vector2i(5, 7)));
+        assertEquals(Integer.valueOf(8), hm.asFunction().apply(new Vector2i(5, 7)));
+        assertEquals(8, HeightMaps.fromFunction(hm.asFunction()).apply(5, 7));
+        assertEquals(-4, HeightMaps.fromOperator((x, z) -> x - z).apply(3, 7));
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void noiseReseedTest() {
+        NoiseHeightMap a = new NoiseHeightMap(1234);
+        NoiseHeightMap b = a.withSeed(5678);
+
+        assertEquals(1234, a.getSeed());
+        assertEquals(5678, b.getSeed());
+
+        NoiseHeightMap reference = new NoiseHeightMap(5678);
+        a.setSeed(5678);
+        for (int i = 0; i < 100; i++) {
+            Vector2i pos = nextRandomPos();
+            assertEquals(reference.apply(pos), a.apply(pos));
+            assertEquals(reference.apply(pos), b.apply(pos));
+        }
+    }
+
+    @Test
+    public void converterTest() {
+        HeightConverter dense = HeightConverter.builder().add(3, 100).add(7, -4).add(5, 5).build();
+        HeightConverter sparse = dense.toBuilder().add(Integer.MAX_VALUE, 1).add(Integer.MIN_VALUE, 2).build();
+
+        for (HeightConverter conv : new HeightConverter[] {dense, sparse}) {
+            assertEquals(100, conv.convert(3));
+            assertEquals(-4, conv.convert(7));
+            assertEquals(5, conv.convert(5));
+            assertEquals(-9, conv.convert(-9));
+            assertEquals(Integer.MAX_VALUE - 1, conv.convert(Integer.MAX_VALUE - 1));
+
+            int[] heights = {1, 3, 5, 7, 9};
+            conv.convert(heights);
+            assertArrayEquals(new int[] {1, 100, 5, -4, 9}, heights);
+        }
+
+        assertEquals(1, sparse.convert(Integer.MAX_VALUE));
+        assertEquals(2, sparse.convert(Integer.MIN_VALUE));
+        assertTrue(HeightConverter.builder().add(4, 4).build().isIdentity());
+    }
+
+    @Test
+    public void foldingTest() {
+        HeightMap base = (x, z) -> x * 7 - z * 3;
+        HeightMap chain = HeightMaps.offset(HeightMaps.scalingHeight(
+                HeightMaps.offset(HeightMaps.scalingArea(HeightMaps.scalingArea(base, 2), 3), 3), 2), -1);
+
+        AffineHeightMap affine = (AffineHeightMap) chain;
+        assertEquals(2, affine.getScale());
+        assertEquals(5, affine.getOffset());
+        assertEquals(6, ((ScalingAreaHeightMap) affine.getBase()).getScale());
+        assertSame(base, ((ScalingAreaHeightMap) affine.getBase()).getBase());
+
+        for (int i = 0; i < 100; i++) {
+            Vector2i pos = nextRandomPos();
+            assertEquals((base.apply(pos.x * 6, pos.y * 6) + 3) * 2 - 1, chain.apply(pos));
+        }
+
+        // area scales are moved below height transformations
+        HeightMap swapped = HeightMaps.scalingArea(HeightMaps.offset(base, 4), 5);
+        assertEquals(base.apply(10, 15) + 4, swapped.apply(2, 3));
+        assertTrue(swapped instanceof AffineHeightMap);
+
+        assertSame(base, HeightMaps.offset(HeightMaps.offset(base, 4), -4));
+        assertSame(base, HeightMaps.scalingArea(base, 1));
+
+        HeightMap folded = HeightMaps.offset(HeightMaps.scalingHeight(HeightMaps.constant(3), 4), 5);
+        assertTrue(folded instanceof ConstantHeightMap);
+        assertEquals(17, folded.apply(123, 456));
+        assertEquals(0, HeightMaps.scalingHeight(base, 0).apply(1, 2));
+    }
+
     private void basicSymmetryTest(Symmetry sym) {
 
         for (int i = 0; i < 100; i++) {
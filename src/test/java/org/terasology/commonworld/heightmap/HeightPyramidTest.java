@@ -0,0 +1,63 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.commonworld.heightmap;
+
+import org.junit.jupiter.api.Test;
+import org.terasology.joml.geom.Rectanglei;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests {@link HeightPyramid}
+ */
+public class HeightPyramidTest {
+
+    private final HeightMap base = new NoiseHeightMap(4321);
+
+    @Test
+    public void rangeQueryTest() {
+        Rectanglei area = new Rectanglei(-100, 37, 77, 200);
+        HeightPyramid pyramid = HeightMaps.pyramid(HeightMaps.scalingArea(base, 20), area);
+
+        Random r = new Random(1234);
+        for (int i = 0; i < 500; i++) {
+            int x0 = area.minX() + r.nextInt(area.getSizeX());
+            int z0 = area.minY() + r.nextInt(area.getSizeY());
+            int x1 = x0 + 1 + r.nextInt(area.maxX() - x0);
+            int z1 = z0 + 1 + r.nextInt(area.maxY() - z0);
+            Rectanglei query = new Rectanglei(x0, z0, x1, z1);
+
+            int min = Integer.MAX_VALUE;
+            int max = Integer.MIN_VALUE;
+            for (int z = z0; z < z1; z++) {
+                for (int x = x0; x < x1; x++) {
+                    int h = pyramid.apply(x, z);
+                    min = Math.min(min, h);
+                    max = Math.max(max, h);
+                }
+            }
+
+            assertEquals(max, pyramid.maxIn(query), query.toString());
+            assertEquals(min, pyramid.minIn(query), query.toString());
+            assertTrue(pyramid.maxBound(query) >= max);
+            assertTrue(pyramid.minBound(query) <= min);
+        }
+    }
+
+    @Test
+    public void levelTest() {
+        Rectanglei area = new Rectanglei(0, 0, 13, 5);
+        HeightPyramid pyramid = HeightMaps.pyramid((x, z) -> x * 10 + z, area);
+
+        assertEquals(5, pyramid.getLevelCount());
+        assertEquals(1, pyramid.getLevelWidth(4));
+        assertEquals(1, pyramid.getLevelHeight(4));
+        assertEquals(0, pyramid.getMin(4, 0, 0));
+        assertEquals(124, pyramid.getMax(4, 0, 0));
+        assertEquals(14, pyramid.getMax(1, 0, 2));
+    }
+}
@@ -0,0 +1,117 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.commonworld.heightmap;
+
+import org.junit.jupiter.api.Test;
+import org.terasology.commonworld.PackedCoordinates;
+import org.terasology.joml.geom.Rectanglei;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests {@link OverlayHeightMap}
+ */
+public class OverlayHeightMapTest {
+
+    private final HeightMap base = (x, z) -> x * 7 - z * 3;
+
+    @Test
+    public void editTest() {
+        OverlayHeightMap overlay = new OverlayHeightMap(base);
+        Map<Long, Integer> reference = new HashMap<>();
+        Random r = new Random(1234);
+        for (int i = 0; i < 2000; i++) {
+            int x = r.nextInt(200) - 100;
+            int z = r.nextInt(200) - 100;
+            long key = PackedCoordinates.pack(x, z);
+            if (r.nextInt(4) == 0) {
+                overlay.reset(x, z);
+                reference.remove(key);
+            } else {
+                int h = r.nextInt(100);
+                overlay.set(x, z, h);
+                if (h == base.apply(x, z)) {
+                    reference.remove(key);
+                } else {
+                    reference.put(key, h);
+                }
+            }
+        }
+
+        assertEquals(reference.size(), overlay.getModifiedCount());
+        Rectanglei area = new Rectanglei(-110, -105, 107, 103);
+        int[] dest = new int[area.getSizeX() * area.getSizeY()];
+        overlay.fill(area, dest, 0, area.getSizeX());
+        for (int z = area.minY(); z < area.maxY(); z++) {
+            for (int x = area.minX(); x < area.maxX(); x++) {
+                Integer edit = reference.get(PackedCoordinates.pack(x, z));
+                int expected = edit != null ? edit : base.apply(x, z);
+                assertEquals(expected, overlay.apply(x, z));
+                assertEquals(expected, dest[(z - area.minY()) * area.getSizeX() + x - area.minX()]);
+                assertEquals(edit != null, overlay.isModified(x, z));
+            }
+        }
+    }
+
+    @Test
+    public void unchangedTest() {
+        OverlayHeightMap overlay = new OverlayHeightMap(base);
+        overlay.set(5, 5, base.apply(5, 5));
+        assertEquals(0, overlay.getModifiedCount());
+
+        overlay.set(5, 5, 1000);
+        overlay.set(5, 5, base.apply(5, 5));
+        assertFalse(overlay.isModified(5, 5));
+        assertEquals(0, overlay.getModifiedCount());
+    }
+
+    @Test
+    public void serializationTest() throws IOException {
+        OverlayHeightMap overlay = new OverlayHeightMap(base);
+        Random r = new Random(5678);
+        for (int i = 0; i < 500; i++) {
+            int x = r.nextInt(100000) - 50000;
+            int z = r.nextInt(100000) - 50000;
+            overlay.set(x, z, base.apply(x, z) + r.nextInt(21) - 10);
+        }
+        for (int z = -10; z < 10; z++) {
+            for (int x = -10; x < 10; x++) {
+                overlay.set(x, z, -3);
+            }
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        overlay.write(new DataOutputStream(bytes));
+
+        // most cells need a few bytes only
+        assertTrue(bytes.size() < overlay.getModifiedCount() * 8);
+
+        OverlayHeightMap copy = OverlayHeightMap.read(base, new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(overlay.getModifiedCount(), copy.getModifiedCount());
+
+        r = new Random(5678);
+        for (int i = 0; i < 500; i++) {
+            int x = r.nextInt(100000) - 50000;
+            int z = r.nextInt(100000) - 50000;
+            r.nextInt(21);
+            assertEquals(overlay.apply(x, z), copy.apply(x, z));
+        }
+        for (int z = -20; z < 20; z++) {
+            for (int x = -20; x < 20; x++) {
+                assertEquals(overlay.apply(x, z), copy.apply(x, z));
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.commonworld.heightmap;
+
+import org.junit.jupiter.api.Test;
+import org.terasology.joml.geom.Rectanglei;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests the memory-mapped caching height map
+ */
+public class PersistentCachingTest {
+
+    private final AtomicInteger evaluations = new AtomicInteger();
+
+    private final HeightMap base = (x, z) -> {
+        evaluations.incrementAndGet();
+        return 50 * x - z;
+    };
+
+    private final Rectanglei area = new Rectanglei(-40, -20, 24, 44);
+
+    @Test
+    public void reuseTest() throws IOException {
+        Path file = Files.createTempFile("heightmap", ".cache");
+        try {
+            HeightMap first = HeightMaps.persistentCaching(base, area, 1, file, 123L);
+            assertTrue(evaluations.get() > 0);
+            assertSameContent(HeightMaps.caching(base, area, 1), first);
+
+            evaluations.set(0);
+            HeightMap second = HeightMaps.persistentCaching(base, area, 1, file, 123L);
+            assertSameContent(first, second);
+            assertEquals(0, evaluations.get());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void mismatchTest() throws IOException {
+        Path file = Files.createTempFile("heightmap", ".cache");
+        try {
+            HeightMaps.persistentCaching(base, area, 1, file, 123L);
+
+            evaluations.set(0);
+            HeightMaps.persistentCaching(base, area, 1, file, 124L);
+            assertTrue(evaluations.get() > 0, "different seed must be recomputed");
+
+            evaluations.set(0);
+            HeightMap lerp = HeightMaps.persistentCaching(base, area, 4, file, 124L);
+            assertTrue(evaluations.get() > 0, "different scale must be recomputed");
+            assertSameContent(HeightMaps.caching(base, area, 4), lerp);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void replaceWhileMappedTest() throws IOException {
+        Path file = Files.createTempFile("heightmap", ".cache");
+        try {
+            HeightMap first = HeightMaps.persistentCaching(base, area, 1, file, 123L);
+
+            // same file size, but different content - the first instance must keep its data
+            HeightMap second = HeightMaps.persistentCaching(base, area, 4, file, 123L);
+            assertSameContent(HeightMaps.caching(base, area, 1), first);
+            assertSameContent(HeightMaps.caching(base, area, 4), second);
+
+            evaluations.set(0);
+            HeightMaps.persistentCaching(base, area, 4, file, 123L);
+            assertEquals(0, evaluations.get());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void tooLargeTest() throws IOException {
+        Path file = Files.createTempFile("heightmap", ".cache");
+        try {
+            Rectanglei huge = new Rectanglei(0, 0, 30000, 30000);
+            assertThrows(IllegalArgumentException.class, () -> HeightMaps.persistentCaching(base, huge, 1, file, 123L));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private void assertSameContent(HeightMap expected, HeightMap actual) {
+        int[] dest = new int[area.getSizeX() * area.getSizeY()];
+        actual.fill(area, dest, 0, area.getSizeX());
+        for (int z = area.minY(); z < area.maxY(); z++) {
+            for (int x = area.minX(); x < area.maxX(); x++) {
+                int idx = (z - area.minY()) * area.getSizeX() + x - area.minX();
+                assertEquals(expected.apply(x, z), actual.apply(x, z));
+                assertEquals(expected.apply(x, z), dest[idx]);
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.commonworld.heightmap;
+
+import org.junit.jupiter.api.Test;
+import org.terasology.joml.geom.Rectanglei;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests {@link RegionSpliterator}
+ */
+public class RegionSpliteratorTest {
+
+    private final HeightMap base = (x, z) -> x * 7 - z * 3;
+    private final Rectanglei area = new Rectanglei(-100, -37, 150, 93);
+
+    @Test
+    public void streamTest() {
+        long expected = 0;
+        for (int z = area.minY(); z < area.maxY(); z++) {
+            for (int x = area.minX(); x < area.maxX(); x++) {
+                expected += base.apply(x, z);
+            }
+        }
+
+        long count = (long) area.getSizeX() * area.getSizeY();
+        assertEquals(count, HeightMaps.stream(base, area, false).count());
+        assertEquals(count, HeightMaps.stream(base, area, true).count());
+        assertEquals(expected, HeightMaps.stream(base, area, true).mapToLong(HeightCell::getHeight).sum());
+        assertTrue(HeightMaps.stream(base, area, true).allMatch(c -> c.getHeight() == base.apply(c.getX(), c.getZ())));
+    }
+
+    @Test
+    public void splitTest() {
+        RegionSpliterator spliterator = HeightMaps.spliterator(base, area);
+        assertTrue(spliterator.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED));
+
+        // split recursively and traverse the parts in order
+        List<RegionSpliterator> parts = new ArrayList<>();
+        split(spliterator, parts);
+        assertTrue(parts.size() > 1);
+
+        int[] next = {area.minX(), area.minY()};
+        for (RegionSpliterator part : parts) {
+            long size = part.estimateSize();
+            long[] visited = {0};
+            part.forEachRemainingCell((x, z, h) -> {
+                assertEquals(next[0], x);
+                assertEquals(next[1], z);
+                assertEquals(base.apply(x, z), h);
+                visited[0]++;
+                if (++next[0] == area.maxX()) {
+                    next[0] = area.minX();
+                    next[1]++;
+                }
+            });
+            assertEquals(size, visited[0]);
+        }
+        assertEquals(area.maxY(), next[1]);
+    }
+
+    @Test
+    public void singleRowTest() {
+        Rectanglei row = new Rectanglei(0, 5, 5000, 6);
+        RegionSpliterator spliterator = HeightMaps.spliterator(base, row);
+        RegionSpliterator prefix = spliterator.trySplit();
+        assertEquals(2500, prefix.estimateSize());
+        assertEquals(2500, spliterator.estimateSize());
+
+        int[] first = new int[1];
+        assertTrue(spliterator.tryAdvanceCell((x, z, h) -> first[0] = x));
+        assertEquals(2500, first[0]);
+
+        assertNull(HeightMaps.spliterator(base, new Rectanglei(0, 0, 10, 10)).trySplit());
+    }
+
+    private void split(RegionSpliterator spliterator, List<RegionSpliterator> parts) {
+        RegionSpliterator prefix = spliterator.trySplit();
+        if (prefix == null) {
+            parts.add(spliterator);
+        } else {
+            split(prefix, parts);
+            split(spliterator, parts);
+        }
+    }
+}
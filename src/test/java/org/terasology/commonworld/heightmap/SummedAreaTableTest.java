@@ -0,0 +1,78 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.commonworld.heightmap;
+
+import org.junit.jupiter.api.Test;
+import org.terasology.joml.geom.Rectanglei;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests {@link SummedAreaTable}
+ */
+public class SummedAreaTableTest {
+
+    private final Rectanglei area = new Rectanglei(-50, 20, 83, 131);
+
+    @Test
+    public void queryTest() {
+        HeightMap hm = HeightMaps.scalingArea(new NoiseHeightMap(1234), 10);
+        SummedAreaTable table = HeightMaps.summedAreaTable(hm, area);
+        assertQueries(hm, table);
+    }
+
+    @Test
+    public void parallelTest() {
+        HeightMap hm = (x, z) -> x * 31 - z * z;
+        SummedAreaTable table = HeightMaps.summedAreaTableAsync(hm, area, ForkJoinPool.commonPool()).join();
+        assertQueries(hm, table);
+    }
+
+    @Test
+    public void updateTest() {
+        EditableHeightMap hm = new EditableHeightMap((x, z) -> x - z);
+        SummedAreaTable table = HeightMaps.summedAreaTable(hm, area);
+
+        Rectanglei tile = new Rectanglei(0, 64, 32, 96);
+        hm.setArea(tile, 1000);
+        table.update(tile);
+
+        // listener-based update
+        hm.addListener(table);
+        hm.set(82, 130, -70000);
+        hm.flush();
+        assertQueries(hm, table);
+    }
+
+    private void assertQueries(HeightMap hm, SummedAreaTable table) {
+        Random r = new Random(5678);
+        for (int i = 0; i < 300; i++) {
+            int x0 = area.minX() + r.nextInt(area.getSizeX());
+            int z0 = area.minY() + r.nextInt(area.getSizeY());
+            int x1 = x0 + 1 + r.nextInt(area.maxX() - x0);
+            int z1 = z0 + 1 + r.nextInt(area.maxY() - z0);
+            Rectanglei rc = new Rectanglei(x0, z0, x1, z1);
+
+            long sum = 0;
+            long squares = 0;
+            for (int z = z0; z < z1; z++) {
+                for (int x = x0; x < x1; x++) {
+                    long h = hm.apply(x, z);
+                    sum += h;
+                    squares += h * h;
+                }
+            }
+            double count = (double) rc.getSizeX() * rc.getSizeY();
+            double mean = sum / count;
+
+            assertEquals(sum, table.sum(rc));
+            assertEquals(squares, table.sumOfSquares(rc));
+            assertEquals(mean, table.mean(rc), 1e-9);
+            assertEquals(squares / count - mean * mean, table.variance(rc), 1e-6 * Math.max(1, squares / count));
+        }
+    }
+}
@@ -5,8 +5,11 @@ package org.terasology.commonworld.heightmap;
 
 import org.joml.Vector2i;
 import org.junit.jupiter.api.Test;
+import org.terasology.commonworld.PackedCoordinates;
+import org.terasology.commonworld.symmetry.AbstractSymmetry;
 import org.terasology.commonworld.symmetry.Symmetries;
 import org.terasology.commonworld.symmetry.Symmetry;
+import org.terasology.joml.geom.Rectanglei;
 
 import java.util.Random;
 
@@ -62,6 +65,176 @@ public class SymmetryTest {
         assertEquals(new Vector2i(10, 10), shm.getMirrored(new Vector2i(-11, -11)));
     }
 
+    @Test
+    public void symmetricCachingTest() {
+        HeightMap base = (x, z) -> x * 7 - z * 3;
+        Symmetry[] symmetries = {
+            Symmetries.alongX(), Symmetries.alongZ(), Symmetries.alongPositiveDiagonal(), Symmetries.alongNegativeDiagonal(),
+            Symmetries.twoMirrors(), Symmetries.rotational(2), Symmetries.rotational(4), Symmetries.kaleidoscope()
+        };
+        Rectanglei[] areas = {new Rectanglei(-64, -64, 64, 64), new Rectanglei(-30, -70, 90, 40)};
+
+        for (Symmetry sym : symmetries) {
+            HeightMap reference = HeightMaps.symmetric(base, sym);
+            for (Rectanglei area : areas) {
+                SymmetricCachingHeightMap cache = (SymmetricCachingHeightMap) HeightMaps.symmetricCaching(base, area, sym);
+                for (int z = area.minY() - 5; z < area.maxY() + 5; z++) {
+                    for (int x = area.minX() - 5; x < area.maxX() + 5; x++) {
+                        assertEquals(reference.apply(x, z), cache.apply(x, z));
+                    }
+                }
+
+                // inside, across the edges and completely outside of the area
+                Rectanglei[] targets = {
+                    new Rectanglei(area.minX() + 3, area.minY() + 2, area.maxX() - 1, area.maxY() - 4),
+                    new Rectanglei(area.minX() - 5, area.minY() - 7, area.maxX() + 6, area.maxY() + 3),
+                    new Rectanglei(area.maxX() - 10, area.minY() - 3, area.maxX() + 10, area.minY() + 12),
+                    new Rectanglei(area.maxX() + 2, area.maxY() + 2, area.maxX() + 9, area.maxY() + 5)
+                };
+                for (Rectanglei target : targets) {
+                    int stride = target.getSizeX() + 3;
+                    int[] dest = new int[stride * target.getSizeY() + 2];
+                    cache.fill(target, dest, 2, stride);
+                    for (int z = 0; z < target.getSizeY(); z++) {
+                        for (int x = 0; x < target.getSizeX(); x++) {
+                            int expected = reference.apply(target.minX() + x, target.minY() + z);
+                            assertEquals(expected, dest[2 + z * stride + x], sym + " " + target);
+                        }
+                    }
+                }
+            }
+
+            // a square area that is centered on the mirror axis needs (about) half of the cells
+            SymmetricCachingHeightMap cache = (SymmetricCachingHeightMap) HeightMaps.symmetricCaching(base, areas[0], sym);
+            assertTrue(cache.getCellCount() <= 128 * 129 / 2 + 128, sym.toString());
+        }
+    }
+
+    @Test
+    public void runTest() {
+        Symmetry rotated = new AbstractSymmetry() {
+            // point symmetry around (-0.5, -0.5) - uses the default run implementation
+            @Override
+            public boolean isMirrored(int x, int z) {
+                return z < 0 || (z == 0 && x < 0);
+            }
+
+            @Override
+            public Vector2i getMirrored(int x, int z) {
+                return new Vector2i(-x - 1, -z - 1);
+            }
+        };
+        Symmetry[] symmetries = {
+            Symmetries.alongX(), Symmetries.alongZ(), Symmetries.alongPositiveDiagonal(), Symmetries.alongNegativeDiagonal(), rotated
+        };
+
+        Rectanglei area = new Rectanglei(-20, -13, 17, 25);
+        for (Symmetry sym : symmetries) {
+            int[] count = new int[1];
+            int[] next = {area.minX(), area.minY()};
+            sym.forEachRun(area, (x, z, length, mirrored, srcX, srcZ, stepX, stepZ) -> {
+                assertEquals(next[0], x);
+                assertEquals(next[1], z);
+                for (int i = 0; i < length; i++) {
+                    assertEquals(mirrored, sym.isMirrored(x + i, z));
+                    Vector2i expected = mirrored ? sym.getMirrored(x + i, z) : new Vector2i(x + i, z);
+                    assertEquals(expected, new Vector2i(srcX + i * stepX, srcZ + i * stepZ));
+                }
+                count[0] += length;
+                next[0] = x + length;
+                if (next[0] == area.maxX()) {
+                    next[0] = area.minX();
+                    next[1]++;
+                }
+            });
+            assertEquals(area.getSizeX() * area.getSizeY(), count[0]);
+        }
+
+        HeightMap base = (x, z) -> x * 7 - z * 3;
+        HeightMap hm = HeightMaps.symmetric(base, rotated);
+        int[] dest = new int[area.getSizeX() * area.getSizeY()];
+        hm.fill(area, dest, 0, area.getSizeX());
+        for (int z = area.minY(); z < area.maxY(); z++) {
+            for (int x = area.minX(); x < area.maxX(); x++) {
+                assertEquals(hm.apply(x, z), dest[(z - area.minY()) * area.getSizeX() + x - area.minX()]);
+            }
+        }
+    }
+
+    @Test
+    public void compositeSymmetryTest() {
+        // orbit sizes and the number of canonical cells in the 16x16 area around the center
+        Symmetry[] symmetries = {
+            Symmetries.twoMirrors(), Symmetries.rotational(2), Symmetries.rotational(4), Symmetries.kaleidoscope()
+        };
+        int[] canonical = {64, 128, 64, 36};
+
+        Rectanglei area = new Rectanglei(-8, -8, 8, 8);
+        HeightMap base = (x, z) -> x * 7 - z * 3;
+        for (int i = 0; i < symmetries.length; i++) {
+            Symmetry sym = symmetries[i];
+            HeightMap hm = HeightMaps.symmetric(base, sym);
+            int count = 0;
+            for (int z = area.minY(); z < area.maxY(); z++) {
+                for (int x = area.minX(); x < area.maxX(); x++) {
+                    if (!sym.isMirrored(x, z)) {
+                        // canonical cells are their own representative
+                        assertEquals(new Vector2i(x, z), sym.getMirrored(x, z));
+                        count++;
+                        continue;
+                    }
+                    // mirrored cells map onto canonical cells in a single step
+                    Vector2i m = sym.getMirrored(x, z);
+                    assertTrue(!sym.isMirrored(m.x(), m.y()));
+                    assertEquals(hm.apply(m.x(), m.y()), hm.apply(x, z));
+                }
+            }
+            assertEquals(canonical[i], count);
+
+            // the whole orbit shares the same height
+            assertEquals(hm.apply(3, 5), hm.apply(-4, -6));
+        }
+
+        HeightMap kaleidoscope = HeightMaps.symmetric(base, Symmetries.kaleidoscope());
+        assertEquals(kaleidoscope.apply(2, 5), kaleidoscope.apply(5, 2));
+        assertEquals(kaleidoscope.apply(2, 5), kaleidoscope.apply(-3, 5));
+        assertEquals(kaleidoscope.apply(2, 5), kaleidoscope.apply(-6, -3));
+
+        HeightMap quarter = HeightMaps.symmetric(base, Symmetries.rotational(4));
+        assertEquals(quarter.apply(2, 5), quarter.apply(-6, 2));
+        assertEquals(quarter.apply(2, 5), quarter.apply(5, -3));
+    }
+
+    @Test
+    public void compositeRunTest() {
+        Symmetry[] symmetries = {
+            Symmetries.twoMirrors(), Symmetries.rotational(2), Symmetries.rotational(4), Symmetries.kaleidoscope()
+        };
+        Rectanglei area = new Rectanglei(-20, -13, 17, 25);
+        HeightMap base = (x, z) -> x * 7 - z * 3;
+        for (Symmetry sym : symmetries) {
+            int[] count = new int[1];
+            sym.forEachRun(area, (x, z, length, mirrored, srcX, srcZ, stepX, stepZ) -> {
+                for (int i = 0; i < length; i++) {
+                    assertEquals(mirrored, sym.isMirrored(x + i, z));
+                    long expected = mirrored ? sym.getMirroredPacked(x + i, z) : PackedCoordinates.pack(x + i, z);
+                    assertEquals(expected, PackedCoordinates.pack(srcX + i * stepX, srcZ + i * stepZ));
+                }
+                count[0] += length;
+            });
+            assertEquals(area.getSizeX() * area.getSizeY(), count[0]);
+
+            HeightMap hm = HeightMaps.symmetric(base, sym);
+            int[] dest = new int[area.getSizeX() * area.getSizeY()];
+            hm.fill(area, dest, 0, area.getSizeX());
+            for (int z = area.minY(); z < area.maxY(); z++) {
+                for (int x = area.minX(); x < area.maxX(); x++) {
+                    assertEquals(hm.apply(x, z), dest[(z - area.minY()) * area.getSizeX() + x - area.minX()]);
+                }
+            }
+        }
+    }
+
     private void basicSymmetryTest(Symmetry shm) {
 
         for (int i = 0; i < 100; i++) {
@@ -74,6 +247,8 @@ public class SymmetryTest {
 
             assertTrue(isMirrored != shm.isMirrored(mirrored));
             assertEquals(test, shm.getMirrored(mirrored));
+            assertEquals(PackedCoordinates.pack(mirrored.x, mirrored.y), shm.getMirroredPacked(test.x, test.y));
+            assertEquals(mirrored, shm.getMirrored(test.x, test.y, new Vector2i()));
         }
     }
 
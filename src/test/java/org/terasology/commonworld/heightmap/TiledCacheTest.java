@@ -0,0 +1,168 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.commonworld.heightmap;
+
+import org.junit.jupiter.api.Test;
+import org.terasology.joml.geom.Rectanglei;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests the lazily computed tile caches
+ */
+public class TiledCacheTest {
+
+    private final AtomicInteger evaluations = new AtomicInteger();
+
+    private final HeightMap base = (x, z) -> {
+        evaluations.incrementAndGet();
+        return x * 7 - z * 3;
+    };
+
+    @Test
+    public void valuesTest() {
+        HeightMap cache = HeightMaps.tiledCache(base, 16, 4);
+        Random r = new Random(1234);
+        for (int i = 0; i < 1000; i++) {
+            int x = r.nextInt(200) - 100;
+            int z = r.nextInt(200) - 100;
+            assertEquals(x * 7 - z * 3, cache.apply(x, z));
+        }
+    }
+
+    @Test
+    public void lazyTileTest() {
+        HeightMap cache = HeightMaps.tiledCache(base, 16, 4);
+        cache.apply(-1, -1);
+        assertEquals(16 * 16, evaluations.get());
+
+        cache.apply(-16, -16);
+        cache.apply(-5, -9);
+        assertEquals(16 * 16, evaluations.get());
+
+        cache.apply(0, -1);
+        assertEquals(2 * 16 * 16, evaluations.get());
+    }
+
+    @Test
+    public void evictionTest() {
+        HeightMap cache = HeightMaps.tiledCache(base, 8, 2);
+        cache.apply(0, 0);   // tile A
+        cache.apply(8, 0);   // tile B
+        cache.apply(0, 0);   // touch A
+        cache.apply(16, 0);  // tile C evicts B
+        assertEquals(3 * 64, evaluations.get());
+
+        cache.apply(1, 1);   // A is still present
+        assertEquals(3 * 64, evaluations.get());
+
+        cache.apply(9, 0);   // B needs to be recomputed
+        assertEquals(4 * 64, evaluations.get());
+    }
+
+    @Test
+    public void fillTest() {
+        HeightMap cache = HeightMaps.tiledCache(base, 16, 8);
+        Rectanglei area = new Rectanglei(-20, -7, 21, 30);
+        int[] dest = new int[area.getSizeX() * area.getSizeY()];
+        cache.fill(area, dest, 0, area.getSizeX());
+
+        for (int z = area.minY(); z < area.maxY(); z++) {
+            for (int x = area.minX(); x < area.maxX(); x++) {
+                assertEquals(x * 7 - z * 3, dest[(z - area.minY()) * area.getSizeX() + x - area.minX()]);
+            }
+        }
+    }
+
+    @Test
+    public void concurrentSingleComputationTest() throws Exception {
+        HeightMap cache = HeightMaps.concurrentTiledCache(base, 16, 64);
+        int threadCount = 8;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        List<Future<?>> results = new ArrayList<>();
+        for (int t = 0; t < threadCount; t++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                for (int z = -32; z < 32; z++) {
+                    for (int x = -32; x < 32; x++) {
+                        assertEquals(x * 7 - z * 3, cache.apply(x, z));
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> result : results) {
+            result.get();
+        }
+        executor.shutdown();
+
+        // 4x4 tiles, each of them computed exactly once
+        assertEquals(16 * 16 * 16, evaluations.get());
+    }
+
+    @Test
+    public void concurrentStripeCapacityTest() {
+        // many threads, but few tiles - all of them must still fit in the cache
+        HeightMap cache = new ConcurrentTiledCachingHeightMap(base, 16, 16, 16);
+        for (int round = 0; round < 3; round++) {
+            for (int t = 0; t < 8; t++) {
+                assertEquals(t * 16 * 7, cache.apply(t * 16, 0));
+            }
+        }
+        assertEquals(8 * 16 * 16, evaluations.get());
+    }
+
+    @Test
+    public void concurrentErrorTest() {
+        AtomicInteger calls = new AtomicInteger();
+        HeightMap failing = (x, z) -> {
+            if (calls.incrementAndGet() == 1) {
+                throw new StackOverflowError();
+            }
+            return x + z;
+        };
+        HeightMap cache = HeightMaps.concurrentTiledCache(failing, 4, 16);
+        assertThrows(StackOverflowError.class, () -> cache.apply(1, 2));
+
+        // the failed tile is not kept, so it is computed again
+        assertEquals(3, cache.apply(1, 2));
+    }
+
+    @Test
+    public void longIntMapTest() {
+        LongIntMap map = new LongIntMap(4, -1);
+        Map<Long, Integer> ref = new HashMap<>();
+        Random r = new Random(42);
+        for (int i = 0; i < 5000; i++) {
+            long key = r.nextInt(300) - 150;
+            if (r.nextInt(3) == 0) {
+                Integer prev = ref.remove(key);
+                assertEquals(prev == null ? -1 : prev, map.remove(key));
+            } else {
+                int value = r.nextInt(1000);
+                Integer prev = ref.put(key, value);
+                assertEquals(prev == null ? -1 : prev, map.put(key, value));
+            }
+            assertEquals(ref.size(), map.size());
+        }
+        for (long key = -150; key < 150; key++) {
+            Integer value = ref.get(key);
+            assertEquals(value == null ? -1 : value, map.get(key));
+        }
+    }
+}